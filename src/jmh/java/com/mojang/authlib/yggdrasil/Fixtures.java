@@ -0,0 +1,26 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.util.UUIDTypeAdapter;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.Charsets;
+
+/**
+ * Payloads shaped like the ones the session server hands out.
+ */
+final class Fixtures {
+    static final String PROFILE_NAME = "Notch";
+    static final String SIGNATURE = Base64.encodeBase64String(new byte[512]);
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param variant makes the payload distinct, so memoized decoding can be defeated
+     */
+    static String texturesValue(long variant) {
+        String json = "{\"timestamp\":" + (1500000000000L + variant) + ",\"profileId\":\"" + UUIDTypeAdapter.fromUUID(StubYggdrasilServer.idOf(PROFILE_NAME)) + "\",\"profileName\":\"" + PROFILE_NAME + "\","
+                + "\"textures\":{\"SKIN\":{\"url\":\"http://textures.max107.ru/texture/292009a4925b58f02c77dadc3ecef07ea4c7472f64e0fdc32ce5522489362680\"},"
+                + "\"CAPE\":{\"url\":\"http://textures.max107.ru/texture/3f688e0e699b3d9fe448b5bb50a3a288f9c589762b3dae8308842122dcb81\"}}}";
+        return Base64.encodeBase64String(json.getBytes(Charsets.UTF_8));
+    }
+}
@@ -0,0 +1,186 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.exceptions.AuthenticationException;
+import com.mojang.authlib.http.PooledHttpTransport;
+import com.mojang.authlib.minecraft.MinecraftProfileTexture;
+
+import java.io.PrintStream;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a join storm against {@link StubYggdrasilServer}: players arrive as a Poisson process over the ramp
+ * period, and each one goes through join, hasJoined, fillProfileProperties and getTextures on a pool of login
+ * threads, the way a server handles them. Reports throughput and client side latency percentiles per step.
+ * <p>
+ * Options are given as {@code --name=value}: players, threads, ramp (ms), latency (ms), jitter (ms), errors and
+ * timeouts (share of requests, 0 to 1), batch (true to check logins through the bulk hasJoined endpoint), and gzip
+ * (true to have the stub compress its responses).
+ */
+public final class JoinStorm {
+    private static final String[] STEPS = {"join", "hasJoined", "fillProfileProperties", "getTextures", "total"};
+
+    private JoinStorm() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        final int players = Integer.parseInt(option(options, "players", "1000"));
+        int threads = Integer.parseInt(option(options, "threads", "64"));
+        long ramp = Long.parseLong(option(options, "ramp", "2000"));
+        final boolean batch = Boolean.parseBoolean(option(options, "batch", "false"));
+
+        StubYggdrasilServer server = new StubYggdrasilServer();
+        server.setLatency(Long.parseLong(option(options, "latency", "20")), Long.parseLong(option(options, "jitter", "10")));
+        server.setErrorRate(Double.parseDouble(option(options, "errors", "0")));
+        server.setTimeoutRate(Double.parseDouble(option(options, "timeouts", "0")), TimeUnit.SECONDS.toMillis(20));
+        server.setCompressResponses(Boolean.parseBoolean(option(options, "gzip", "false")));
+
+        YggdrasilAuthenticationService authenticationService = new YggdrasilAuthenticationService(Proxy.NO_PROXY, UUID.randomUUID().toString());
+        authenticationService.setTransport(server.redirect(new PooledHttpTransport(Proxy.NO_PROXY)));
+        final YggdrasilMinecraftSessionService sessionService = (YggdrasilMinecraftSessionService) authenticationService.createMinecraftSessionService();
+
+        final Recorder[] recorders = new Recorder[STEPS.length];
+        for (int i = 0; i < STEPS.length; i++) {
+            recorders[i] = new Recorder(STEPS[i], players);
+        }
+        final ExecutorService logins = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("Login #%d").setDaemon(true).build());
+        ScheduledExecutorService arrivals = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Arrivals").setDaemon(true).build());
+        final CountDownLatch done = new CountDownLatch(players);
+
+        Random random = new Random(107L);
+        double meanGap = (double) TimeUnit.MILLISECONDS.toMicros(ramp) / players;
+        double arrival = 0.0D;
+        long start = System.nanoTime();
+        for (int i = 0; i < players; i++) {
+            final String name = "Player" + i;
+            arrivals.schedule(new Runnable() {
+                public void run() {
+                    logins.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                login(sessionService, name, batch, recorders);
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    });
+                }
+            }, (long) arrival, TimeUnit.MICROSECONDS);
+            arrival += -Math.log(1.0D - random.nextDouble()) * meanGap;
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        PrintStream out = System.out;
+        out.println(String.format(Locale.ROOT, "%d players, %d login threads, %d ms ramp%s: %.1f s, %.1f logins/s, %d server requests (%d injected failures)",
+                players, threads, ramp, batch ? ", batched" : "", elapsed / 1e9, players / (elapsed / 1e9), server.getRequestCount(), server.getInjectedFailures()));
+        out.println(String.format(Locale.ROOT, "%-22s %8s %8s %10s %10s %10s %10s", "step", "ok", "failed", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Recorder recorder : recorders) {
+            recorder.print(out);
+        }
+
+        arrivals.shutdownNow();
+        logins.shutdownNow();
+        authenticationService.getTransport().close();
+        server.close();
+    }
+
+    private static void login(YggdrasilMinecraftSessionService sessionService, String name, boolean batch, Recorder[] recorders) {
+        GameProfile profile = new GameProfile(StubYggdrasilServer.idOf(name), name);
+        String serverId = Long.toHexString(profile.getId().getLeastSignificantBits());
+        long begin = System.nanoTime();
+        long step = begin;
+        int current = 0;
+        try {
+            sessionService.joinServer(profile, UUID.randomUUID().toString(), serverId);
+            step = recorders[current++].record(step);
+
+            GameProfile user = new GameProfile(null, name);
+            GameProfile joined = batch ? YggdrasilAuthenticationService.getResult(sessionService.hasJoinedServerBatched(user, serverId)) : sessionService.hasJoinedServer(user, serverId);
+            if (joined == null) {
+                throw new AuthenticationException("Player " + name + " has not joined");
+            }
+            step = recorders[current++].record(step);
+
+            GameProfile filled = sessionService.fillProfileProperties(joined, false);
+            step = recorders[current++].record(step);
+
+            Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> textures = sessionService.getTextures(filled, false);
+            if (textures.isEmpty()) {
+                throw new IllegalStateException("No textures for " + name);
+            }
+            recorders[current].record(step);
+            recorders[STEPS.length - 1].record(begin);
+        } catch (AuthenticationException e) {
+            recorders[current].failed.incrementAndGet();
+            recorders[STEPS.length - 1].failed.incrementAndGet();
+        } catch (RuntimeException e) {
+            recorders[current].failed.incrementAndGet();
+            recorders[STEPS.length - 1].failed.incrementAndGet();
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static final class Recorder {
+        private final String name;
+        private final long[] samples;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong failed = new AtomicLong();
+
+        Recorder(String name, int capacity) {
+            this.name = name;
+            this.samples = new long[capacity];
+        }
+
+        /**
+         * @return the current time, for timing the next step
+         */
+        long record(long since) {
+            long now = System.nanoTime();
+            this.samples[this.count.getAndIncrement()] = now - since;
+            return now;
+        }
+
+        void print(PrintStream out) {
+            int count = this.count.get();
+            long[] sorted = Arrays.copyOf(this.samples, count);
+            Arrays.sort(sorted);
+            out.println(String.format(Locale.ROOT, "%-22s %8d %8d %10.2f %10.2f %10.2f %10.2f", this.name, count, this.failed.get(),
+                    percentile(sorted, 0.5D), percentile(sorted, 0.99D), percentile(sorted, 0.999D), count == 0 ? 0.0D : sorted[count - 1] / 1e6));
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0.0D;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.HttpAuthenticationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URL building and texture domain checks, the per-request work that happens before anything goes on the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+    private static final URL CHECK_URL = HttpAuthenticationService.constantURL("http://localhost/minecraft/session/hasJoined");
+    private final YggdrasilEndpoints endpoints = YggdrasilEndpoints.DEFAULT;
+    private final DomainWhitelist whitelist = new DomainWhitelist("localhost", ".max107.ru");
+    private String username;
+    private String serverId;
+
+    @Setup
+    public void setup() {
+        this.username = "Notch";
+        this.serverId = "-4fc0f2d9a0f4ba2fe8e2a3c5d4c3a1b2f9d8e7c6";
+    }
+
+    @Benchmark
+    public URL buildHasJoinedUrl() {
+        Map<String, Object> arguments = new HashMap<String, Object>();
+        arguments.put("username", this.username);
+        arguments.put("serverId", this.serverId);
+        return HttpAuthenticationService.concatenateURL(CHECK_URL, HttpAuthenticationService.buildQuery(arguments));
+    }
+
+    @Benchmark
+    public URL buildHasJoinedUrlTemplate() {
+        return this.endpoints.getHasJoinedUrl(this.username, this.serverId);
+    }
+
+    @Benchmark
+    public boolean whitelistedDomain() {
+        return this.whitelist.isWhitelisted("http://textures.max107.ru/texture/2b7c8e1f0a9d4c3b");
+    }
+
+    @Benchmark
+    public boolean rejectedDomain() {
+        return this.whitelist.isWhitelisted("http://textures.example.com/texture/2b7c8e1f0a9d4c3b");
+    }
+}
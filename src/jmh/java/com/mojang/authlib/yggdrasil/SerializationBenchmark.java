@@ -0,0 +1,84 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.gson.Gson;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.Property;
+import com.mojang.authlib.properties.PropertyMap;
+import com.mojang.authlib.yggdrasil.response.ProfileSearchResultsResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.Proxy;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson round-trips through the type adapters registered by {@link YggdrasilAuthenticationService}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    private Gson gson;
+    private GameProfile profile;
+    private PropertyMap properties;
+    private String profileJson;
+    private String propertiesJson;
+    private String searchJson;
+
+    @Setup
+    public void setup() {
+        this.gson = new YggdrasilAuthenticationService(Proxy.NO_PROXY, UUID.randomUUID().toString()).getGson();
+        this.profile = new GameProfile(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), "Notch");
+        this.properties = new PropertyMap();
+        this.properties.put("textures", new Property("textures", Fixtures.texturesValue(0), Fixtures.SIGNATURE));
+        this.properties.put("locale", new Property("locale", "en_US"));
+        this.profileJson = this.gson.toJson(this.profile);
+        this.propertiesJson = this.gson.toJson(this.properties);
+
+        StringBuilder search = new StringBuilder("[");
+        for (int i = 0; i < 10; i++) {
+            if (i > 0) {
+                search.append(',');
+            }
+            search.append(this.gson.toJson(new GameProfile(new UUID(i, i), "Player" + i)));
+        }
+        this.searchJson = search.append(']').toString();
+    }
+
+    @Benchmark
+    public GameProfile gameProfileRoundTrip() {
+        return this.gson.fromJson(this.gson.toJson(this.profile), GameProfile.class);
+    }
+
+    @Benchmark
+    public GameProfile gameProfileRead() {
+        return this.gson.fromJson(this.profileJson, GameProfile.class);
+    }
+
+    @Benchmark
+    public PropertyMap propertyMapRoundTrip() {
+        return this.gson.fromJson(this.gson.toJson(this.properties), PropertyMap.class);
+    }
+
+    @Benchmark
+    public PropertyMap propertyMapRead() {
+        return this.gson.fromJson(this.propertiesJson, PropertyMap.class);
+    }
+
+    @Benchmark
+    public ProfileSearchResultsResponse profileSearchRead() {
+        return this.gson.fromJson(this.searchJson, ProfileSearchResultsResponse.class);
+    }
+}
@@ -0,0 +1,101 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.exceptions.AuthenticationException;
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.http.PooledHttpTransport;
+import com.mojang.authlib.minecraft.MinecraftProfileTexture;
+import com.mojang.authlib.properties.Property;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session service paths a server runs for every player: texture decoding, cached property lookups and the
+ * hasJoined round trip against an in-process stub server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+    // Twice the size of the decoded textures cache, so cycling through them mostly misses.
+    private static final int DISTINCT_TEXTURES = 8192;
+    private static final String SERVER_ID = "4ed1f46bbe04bc756bcb17c0c7ce3e4632f06a48";
+    private StubYggdrasilServer server;
+    private YggdrasilAuthenticationService authenticationService;
+    private YggdrasilMinecraftSessionService sessionService;
+    private GameProfile profile;
+    private GameProfile texturedProfile;
+    private GameProfile[] distinctProfiles;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, AuthenticationException {
+        this.server = new StubYggdrasilServer();
+        this.authenticationService = new YggdrasilAuthenticationService(Proxy.NO_PROXY, UUID.randomUUID().toString());
+        this.authenticationService.setTransport(this.server.redirect(new PooledHttpTransport(Proxy.NO_PROXY)));
+        this.sessionService = (YggdrasilMinecraftSessionService) this.authenticationService.createMinecraftSessionService();
+
+        UUID id = StubYggdrasilServer.idOf(Fixtures.PROFILE_NAME);
+        this.profile = new GameProfile(id, Fixtures.PROFILE_NAME);
+        this.sessionService.joinServer(this.profile, UUID.randomUUID().toString(), SERVER_ID);
+        this.sessionService.fillProfileProperties(this.profile, false);
+
+        this.texturedProfile = texturedProfile(id, 0);
+        this.distinctProfiles = new GameProfile[DISTINCT_TEXTURES];
+        for (int i = 0; i < DISTINCT_TEXTURES; i++) {
+            this.distinctProfiles[i] = texturedProfile(id, i + 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.authenticationService.getTransport().close();
+        this.server.close();
+    }
+
+    private static GameProfile texturedProfile(UUID id, long variant) {
+        GameProfile profile = new GameProfile(id, Fixtures.PROFILE_NAME);
+        profile.getProperties().put("textures", new Property("textures", Fixtures.texturesValue(variant)));
+        return profile;
+    }
+
+    @Benchmark
+    public Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> getTexturesMemoized() {
+        return this.sessionService.getTextures(this.texturedProfile, false);
+    }
+
+    @Benchmark
+    public Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> getTexturesDecode() {
+        GameProfile profile = this.distinctProfiles[this.next++ & (DISTINCT_TEXTURES - 1)];
+        return this.sessionService.getTextures(profile, false);
+    }
+
+    @Benchmark
+    public GameProfile fillProfilePropertiesCached() {
+        return this.sessionService.fillProfileProperties(this.profile, false);
+    }
+
+    @Benchmark
+    public GameProfile hasJoinedServer() throws AuthenticationUnavailableException {
+        return this.sessionService.hasJoinedServer(this.profile, SERVER_ID);
+    }
+}
@@ -0,0 +1,461 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mojang.authlib.http.ContentEncoding;
+import com.mojang.authlib.http.HttpRequest;
+import com.mojang.authlib.http.HttpResponse;
+import com.mojang.authlib.http.HttpTransport;
+import com.mojang.util.UUIDTypeAdapter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the auth, session and profile servers, built on the JDK HTTP server. It keeps just
+ * enough state for a client to authenticate, join and be found by hasJoined, and can be told to be slow, fail
+ * or stop answering for a share of requests.
+ * <p>
+ * Player ids are derived from names with {@link #idOf(String)}, so clients can build matching profiles without
+ * authenticating first. Use {@link #redirect(HttpTransport)} to point a client, whose endpoints name
+ * {@code localhost}, at this server.
+ */
+public class StubYggdrasilServer implements Closeable {
+    static {
+        // Headers and body go out as separate writes; without this, Nagle and delayed ACKs add ~40 ms per request.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final String TEXTURE_HOST = "http://textures.max107.ru/texture/";
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, String> tokens = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<UUID, String> joins = new ConcurrentHashMap<UUID, String>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedFailures = new AtomicLong();
+    private volatile long latency;
+    private volatile long latencyJitter;
+    private volatile double errorRate;
+    private volatile double rateLimitRate;
+    private volatile double timeoutRate;
+    private volatile long timeoutDelay = TimeUnit.SECONDS.toMillis(20);
+    private volatile PrivateKey signingKey;
+    private volatile boolean batchEndpoint = true;
+    private volatile boolean compressResponses;
+
+    public StubYggdrasilServer() throws IOException {
+        this(0);
+    }
+
+    public StubYggdrasilServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.server.createContext("/minecraft/auth/", new Handler() {
+            Reply handle(String endpoint, HttpExchange exchange, JsonObject body) {
+                return auth(endpoint, body);
+            }
+        });
+        this.server.createContext("/minecraft/session/", new Handler() {
+            Reply handle(String endpoint, HttpExchange exchange, JsonObject body) {
+                return session(endpoint, exchange, body);
+            }
+        });
+        this.server.createContext("/profiles/", new Handler() {
+            Reply handle(String endpoint, HttpExchange exchange, JsonObject body) throws IOException {
+                return searchProfiles(exchange);
+            }
+        });
+        // Injected latency and timeouts park the handling thread, so each request gets its own.
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Stub Yggdrasil #%d").setDaemon(true).build());
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    /**
+     * @return the id the stub gives to the player with this name
+     */
+    public static UUID idOf(String name) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(Charsets.UTF_8));
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Delays every response by {@code latency} plus a uniformly random share of {@code jitter} milliseconds.
+     */
+    public void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+    }
+
+    /**
+     * Answers this share of requests with a 500 and an error body.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Answers this share of requests with a 429.
+     */
+    public void setRateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+    }
+
+    /**
+     * Holds this share of requests for {@code delay} milliseconds before answering, which should be longer than
+     * the client's read timeout.
+     */
+    public void setTimeoutRate(double timeoutRate, long delay) {
+        this.timeoutRate = timeoutRate;
+        this.timeoutDelay = delay;
+    }
+
+    /**
+     * Signs textures properties with this key, so clients holding the matching public key can verify them.
+     */
+    public void setSigningKey(PrivateKey signingKey) {
+        this.signingKey = signingKey;
+    }
+
+    /**
+     * Whether to serve the bulk hasJoined endpoint. Without it, bulk checks get a 404 as on a server that predates it.
+     */
+    public void setBatchEndpoint(boolean batchEndpoint) {
+        this.batchEndpoint = batchEndpoint;
+    }
+
+    /**
+     * Whether to gzip response bodies for clients that accept it. Gzipped request bodies are always understood.
+     */
+    public void setCompressResponses(boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    public long getInjectedFailures() {
+        return this.injectedFailures.get();
+    }
+
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Sends every request to this server over plain HTTP, whatever scheme, host and port its URL names.
+     */
+    public HttpTransport redirect(final HttpTransport delegate) {
+        return new HttpTransport() {
+            public HttpResponse execute(HttpRequest request) throws IOException {
+                HttpRequest local = new HttpRequest(request.getMethod(), local(request.getUrl()));
+                for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                    local.setHeader(header.getKey(), header.getValue());
+                }
+                if (request.getBody() != null) {
+                    local.setBody(request.getBody());
+                }
+                return delegate.execute(local);
+            }
+
+            public void preconnect(URL url) throws IOException {
+                delegate.preconnect(local(url));
+            }
+
+            public void close() throws IOException {
+                delegate.close();
+            }
+        };
+    }
+
+    private URL local(URL url) throws IOException {
+        return new URL("http", "127.0.0.1", getPort(), url.getFile());
+    }
+
+    private Reply auth(String endpoint, JsonObject body) {
+        if ("authenticate".equals(endpoint)) {
+            String name = string(body, "username");
+            if (name == null) {
+                return Reply.error(403, "ForbiddenOperationException", "Invalid credentials. Invalid username or password.");
+            }
+            return session(name, string(body, "clientToken"));
+        }
+        if ("refresh".equals(endpoint)) {
+            String name = this.tokens.remove(String.valueOf(string(body, "accessToken")));
+            if (name == null) {
+                return Reply.error(403, "ForbiddenOperationException", "Invalid token.");
+            }
+            return session(name, string(body, "clientToken"));
+        }
+        if ("validate".equals(endpoint)) {
+            return this.tokens.containsKey(String.valueOf(string(body, "accessToken"))) ? Reply.NO_CONTENT : Reply.error(403, "ForbiddenOperationException", "Invalid token.");
+        }
+        if ("invalidate".equals(endpoint) || "signout".equals(endpoint)) {
+            if (body != null && body.has("accessToken")) {
+                this.tokens.remove(body.get("accessToken").getAsString());
+            }
+            return Reply.NO_CONTENT;
+        }
+        return Reply.NOT_FOUND;
+    }
+
+    private Reply session(String name, String clientToken) {
+        String accessToken = UUIDTypeAdapter.fromUUID(UUID.randomUUID());
+        this.tokens.put(accessToken, name);
+        JsonObject profile = profile(name, idOf(name), false, false);
+        JsonArray available = new JsonArray();
+        available.add(profile);
+        JsonObject result = new JsonObject();
+        result.addProperty("accessToken", accessToken);
+        result.addProperty("clientToken", clientToken);
+        result.add("selectedProfile", profile);
+        result.add("availableProfiles", available);
+        return Reply.ok(result);
+    }
+
+    private Reply session(String endpoint, HttpExchange exchange, JsonObject body) {
+        if ("join".equals(endpoint)) {
+            String profile = string(body, "selectedProfile");
+            String serverId = string(body, "serverId");
+            if (profile == null || serverId == null) {
+                return Reply.error(403, "ForbiddenOperationException", "Invalid token.");
+            }
+            this.joins.put(UUIDTypeAdapter.fromString(profile), serverId);
+            return Reply.NO_CONTENT;
+        }
+        if ("hasJoined/batch".equals(endpoint) && this.batchEndpoint && body != null) {
+            JsonArray results = new JsonArray();
+            for (JsonElement element : body.getAsJsonArray("checks")) {
+                String name = string(element.getAsJsonObject(), "username");
+                String serverId = string(element.getAsJsonObject(), "serverId");
+                if (name == null || serverId == null || !serverId.equals(this.joins.get(idOf(name)))) {
+                    results.add(JsonNull.INSTANCE);
+                } else {
+                    results.add(profile(name, idOf(name), true, true));
+                }
+            }
+            JsonObject result = new JsonObject();
+            result.add("results", results);
+            return Reply.ok(result);
+        }
+        if ("hasJoined".equals(endpoint)) {
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String name = query.get("username");
+            String serverId = query.get("serverId");
+            if (name == null || serverId == null || !serverId.equals(this.joins.get(idOf(name)))) {
+                return Reply.NO_CONTENT;
+            }
+            return Reply.ok(profile(name, idOf(name), true, true));
+        }
+        if (endpoint.startsWith("profile/")) {
+            String id = endpoint.substring("profile/".length());
+            boolean signed = "false".equals(query(exchange.getRequestURI().getRawQuery()).get("unsigned"));
+            // Names aren't stored; any well-formed id resolves to a player named after it.
+            return Reply.ok(profile(id, UUIDTypeAdapter.fromString(id), true, signed));
+        }
+        return Reply.NOT_FOUND;
+    }
+
+    private Reply searchProfiles(HttpExchange exchange) throws IOException {
+        JsonElement names = new JsonParser().parse(form(requestBody(exchange)));
+        JsonArray result = new JsonArray();
+        for (JsonElement element : names.getAsJsonArray()) {
+            String name = element.getAsString();
+            result.add(profile(name, idOf(name), false, false));
+        }
+        return Reply.ok(result);
+    }
+
+    private JsonObject profile(String name, UUID id, boolean withProperties, boolean signed) {
+        JsonObject profile = new JsonObject();
+        profile.addProperty("id", UUIDTypeAdapter.fromUUID(id));
+        profile.addProperty("name", name);
+        if (withProperties) {
+            String textures = "{\"timestamp\":" + System.currentTimeMillis() + ",\"profileId\":\"" + UUIDTypeAdapter.fromUUID(id) + "\",\"profileName\":\"" + name + "\","
+                    + "\"textures\":{\"SKIN\":{\"url\":\"" + TEXTURE_HOST + UUIDTypeAdapter.fromUUID(id) + "\"}}}";
+            JsonObject property = new JsonObject();
+            property.addProperty("name", "textures");
+            property.addProperty("value", Base64.encodeBase64String(textures.getBytes(Charsets.UTF_8)));
+            PrivateKey key = this.signingKey;
+            if (signed && key != null) {
+                property.addProperty("signature", sign(key, property.get("value").getAsString()));
+            }
+            JsonArray properties = new JsonArray();
+            properties.add(property);
+            profile.add("properties", properties);
+        }
+        return profile;
+    }
+
+    private static String sign(PrivateKey key, String value) {
+        try {
+            Signature signature = Signature.getInstance("SHA1withRSA");
+            signature.initSign(key);
+            signature.update(value.getBytes(Charsets.UTF_8));
+            return Base64.encodeBase64String(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Couldn't sign textures", e);
+        }
+    }
+
+    private static String string(JsonObject object, String name) {
+        return object != null && object.has(name) && !object.get(name).isJsonNull() ? object.get(name).getAsString() : null;
+    }
+
+    private static String requestBody(HttpExchange exchange) throws IOException {
+        return IOUtils.toString(ContentEncoding.decode(exchange.getRequestHeaders().getFirst("Content-Encoding"), exchange.getRequestBody()), "UTF-8");
+    }
+
+    private static String form(String body) {
+        return body.startsWith("data=") ? body.substring("data=".length()) : body;
+    }
+
+    private static Map<String, String> query(String query) {
+        Map<String, String> result = new HashMap<String, String>();
+        if (query == null) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                try {
+                    result.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new Error(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private abstract class Handler implements HttpHandler {
+        abstract Reply handle(String endpoint, HttpExchange exchange, JsonObject body) throws IOException;
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                StubYggdrasilServer.this.requests.incrementAndGet();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long delay = StubYggdrasilServer.this.latency;
+                if (StubYggdrasilServer.this.latencyJitter > 0) {
+                    delay += random.nextLong(StubYggdrasilServer.this.latencyJitter);
+                }
+                if (random.nextDouble() < StubYggdrasilServer.this.timeoutRate) {
+                    StubYggdrasilServer.this.injectedFailures.incrementAndGet();
+                    delay = Math.max(delay, StubYggdrasilServer.this.timeoutDelay);
+                }
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+
+                Reply reply;
+                double roll = random.nextDouble();
+                if (roll < StubYggdrasilServer.this.errorRate) {
+                    StubYggdrasilServer.this.injectedFailures.incrementAndGet();
+                    reply = Reply.error(500, "ServiceUnavailableException", "Injected failure");
+                } else if (roll < StubYggdrasilServer.this.errorRate + StubYggdrasilServer.this.rateLimitRate) {
+                    StubYggdrasilServer.this.injectedFailures.incrementAndGet();
+                    reply = Reply.error(429, "TooManyRequestsException", "Injected rate limit");
+                } else {
+                    String path = exchange.getRequestURI().getPath();
+                    String endpoint = path.substring(exchange.getHttpContext().getPath().length());
+                    JsonObject body = null;
+                    if ("POST".equals(exchange.getRequestMethod()) && !exchange.getHttpContext().getPath().equals("/profiles/")) {
+                        JsonElement element = new JsonParser().parse(form(requestBody(exchange)));
+                        body = element.isJsonObject() ? element.getAsJsonObject() : null;
+                    }
+                    reply = handle(endpoint, exchange, body);
+                }
+                String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                reply.send(exchange, StubYggdrasilServer.this.compressResponses && accept != null && accept.contains("gzip"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                Reply.error(500, "InternalServerError", String.valueOf(e)).send(exchange, false);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static final class Reply {
+        static final Reply NO_CONTENT = new Reply(204, null);
+        static final Reply NOT_FOUND = new Reply(404, null);
+        private final int status;
+        private final byte[] body;
+
+        private Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Reply ok(JsonElement body) {
+            return new Reply(200, body.toString().getBytes(Charsets.UTF_8));
+        }
+
+        static Reply error(int status, String error, String message) {
+            JsonObject body = new JsonObject();
+            body.addProperty("error", error);
+            body.addProperty("errorMessage", message);
+            return new Reply(status, body.toString().getBytes(Charsets.UTF_8));
+        }
+
+        void send(HttpExchange exchange, boolean gzip) throws IOException {
+            if (this.status == 429) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+            }
+            if (this.body == null) {
+                exchange.sendResponseHeaders(this.status, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            byte[] body = this.body;
+            if (gzip) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                GZIPOutputStream out = new GZIPOutputStream(compressed);
+                out.write(body);
+                out.close();
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(this.status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.mojang.authlib;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.mojang.authlib.metrics.AuthMetrics;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers name lookups of another repository. Found profiles are kept for a long time, names the server
+ * reported as missing only briefly, and only names in neither cache are sent upstream. Names are matched
+ * case-insensitively, as the server does, and separately for each agent.
+ */
+public class CachingGameProfileRepository implements GameProfileRepository {
+    private static final Logger LOGGER = LogManager.getLogger();
+    public static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(6);
+    public static final long DEFAULT_NEGATIVE_TTL = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_MAXIMUM_SIZE = 100000L;
+    private final GameProfileRepository delegate;
+    private final Cache<String, GameProfile> profiles;
+    private final Cache<String, Boolean> missing;
+
+    public CachingGameProfileRepository(GameProfileRepository delegate) {
+        this(delegate, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param ttl how long a found profile is remembered, in milliseconds
+     * @param negativeTtl how long a name the server didn't know is remembered, in milliseconds; 0 disables this
+     */
+    public CachingGameProfileRepository(GameProfileRepository delegate, long ttl, long negativeTtl, long maximumSize) {
+        Validate.notNull(delegate);
+        this.delegate = delegate;
+        this.profiles = CacheBuilder.newBuilder().expireAfterWrite(ttl, TimeUnit.MILLISECONDS).maximumSize(maximumSize).recordStats().build();
+        this.missing = CacheBuilder.newBuilder().expireAfterWrite(negativeTtl, TimeUnit.MILLISECONDS).maximumSize(maximumSize).recordStats().build();
+    }
+
+    public void findProfilesByNames(String[] names, final Agent agent, final ProfileLookupCallback callback) {
+        Set<String> seen = Sets.newHashSet();
+        List<String> misses = Lists.newArrayList();
+        for (String name : names) {
+            if (Strings.isNullOrEmpty(name)) {
+                continue;
+            }
+            String key = key(name, agent);
+            if (!seen.add(key)) {
+                continue;
+            }
+            GameProfile profile = this.profiles.getIfPresent(key);
+            if (profile != null) {
+                callback.onProfileLookupSucceeded(profile);
+            } else if (this.missing.getIfPresent(key) != null) {
+                callback.onProfileLookupFailed(new GameProfile(null, name), new ProfileNotFoundException("Server did not find the requested profile"));
+            } else {
+                misses.add(name);
+            }
+        }
+        if (misses.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("{} of {} names were not cached, looking them up", new Object[]{Integer.valueOf(misses.size()), Integer.valueOf(seen.size())});
+
+        this.delegate.findProfilesByNames(misses.toArray(new String[misses.size()]), agent, new ProfileLookupCallback() {
+            public void onProfileLookupSucceeded(GameProfile profile) {
+                if (profile.getName() != null) {
+                    String key = key(profile.getName(), agent);
+                    CachingGameProfileRepository.this.profiles.put(key, profile);
+                    CachingGameProfileRepository.this.missing.invalidate(key);
+                }
+                callback.onProfileLookupSucceeded(profile);
+            }
+
+            public void onProfileLookupFailed(GameProfile profile, Exception exception) {
+                // Only remember names the server actually doesn't know; server errors should be retried.
+                if ((exception instanceof ProfileNotFoundException) && profile.getName() != null) {
+                    CachingGameProfileRepository.this.missing.put(key(profile.getName(), agent), Boolean.TRUE);
+                }
+                callback.onProfileLookupFailed(profile, exception);
+            }
+        });
+    }
+
+    public void invalidate(String name, Agent agent) {
+        String key = key(name, agent);
+        this.profiles.invalidate(key);
+        this.missing.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        this.profiles.invalidateAll();
+        this.missing.invalidateAll();
+    }
+
+    /**
+     * Publishes the statistics of both caches under {@code <prefix>.profiles} and {@code <prefix>.missing}.
+     */
+    public void registerMetrics(AuthMetrics metrics, String prefix) {
+        metrics.registerCache(prefix + ".profiles", this.profiles);
+        metrics.registerCache(prefix + ".missing", this.missing);
+    }
+
+    public GameProfileRepository getDelegate() {
+        return this.delegate;
+    }
+
+    private static String key(String name, Agent agent) {
+        return agent.getName().toLowerCase(Locale.ROOT) + '/' + name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,10 +1,13 @@
 package com.mojang.authlib;
 
+import com.mojang.authlib.http.CachingHostResolver;
+import com.mojang.authlib.http.HttpRequest;
+import com.mojang.authlib.http.HttpResponse;
+import com.mojang.authlib.http.HttpTransport;
+import com.mojang.authlib.http.PooledHttpTransport;
+import com.mojang.authlib.http.UrlConnectionTransport;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
@@ -21,11 +24,21 @@ public abstract class HttpAuthenticationService extends BaseAuthenticationServic
 {
     private static final Logger LOGGER = LogManager.getLogger();
     private final Proxy proxy;
+    private volatile HttpTransport transport;
 
     protected HttpAuthenticationService(Proxy proxy)
     {
         Validate.notNull(proxy);
         this.proxy = proxy;
+        if (proxy.type() == Proxy.Type.HTTP) {
+            this.transport = new UrlConnectionTransport(proxy);
+        } else if (proxy.type() == Proxy.Type.SOCKS) {
+            this.transport = new PooledHttpTransport(proxy);
+        } else {
+            PooledHttpTransport transport = new PooledHttpTransport(proxy);
+            transport.setHostResolver(CachingHostResolver.getDefault());
+            this.transport = transport;
+        }
     }
 
     public Proxy getProxy()
@@ -33,14 +46,33 @@ public abstract class HttpAuthenticationService extends BaseAuthenticationServic
         return this.proxy;
     }
 
-    protected HttpURLConnection createUrlConnection(URL url) throws IOException {
-        Validate.notNull(url);
-        LOGGER.debug(new StringBuilder().append("Opening connection to ").append(url).toString());
-        HttpURLConnection connection = (HttpURLConnection)url.openConnection(this.proxy);
-        connection.setConnectTimeout(15000);
-        connection.setReadTimeout(15000);
-        connection.setUseCaches(false);
-        return connection;
+    /**
+     * Replaces the transport used for all requests of this service. The previous transport is not closed.
+     */
+    public void setTransport(HttpTransport transport)
+    {
+        Validate.notNull(transport);
+        this.transport = transport;
+    }
+
+    public HttpTransport getTransport()
+    {
+        return this.transport;
+    }
+
+    /**
+     * Opens connections to the given hosts ahead of the first request. Failures are logged and otherwise ignored,
+     * as the real request will simply connect on its own.
+     */
+    public void preconnect(URL... urls)
+    {
+        for (URL url : urls) {
+            try {
+                this.transport.preconnect(url);
+            } catch (IOException e) {
+                LOGGER.warn(new StringBuilder().append("Couldn't pre-connect to ").append(url).toString(), e);
+            }
+        }
     }
 
     public String performPostRequest(URL url, String post, String contentType)
@@ -51,50 +83,32 @@ public abstract class HttpAuthenticationService extends BaseAuthenticationServic
         Validate.notNull(contentType);
 
         String newPost = "data=" + post;
-        HttpURLConnection connection = createUrlConnection(url);
         byte[] postAsBytes = newPost.getBytes(Charsets.UTF_8);
 
-        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-//        connection.setRequestProperty("Content-Type", new StringBuilder().append(contentType).append("; charset=").append(Charsets.UTF_8).toString());
-        connection.setRequestProperty("Content-Length", new StringBuilder().append("").append(postAsBytes.length).toString());
-        connection.setDoOutput(true);
-        connection.setRequestMethod("POST");
+        HttpRequest request = new HttpRequest("POST", url);
+        request.setBody(postAsBytes, "application/x-www-form-urlencoded");
+//        request.setBody(postAsBytes, new StringBuilder().append(contentType).append("; charset=").append(Charsets.UTF_8).toString());
 
         LOGGER.info(new StringBuilder().append("Writing POST data to ").append(url).append(": ").append(post).toString());
 
-        OutputStream outputStream = null;
-        try {
-            outputStream = connection.getOutputStream();
-            IOUtils.write(postAsBytes, outputStream);
-        } finally {
-            IOUtils.closeQuietly(outputStream);
-        }
-
-        LOGGER.info(new StringBuilder().append("Reading data from ").append(url).toString());
-
-        InputStream inputStream = null;
+        HttpResponse response = null;
         try {
-            inputStream = connection.getInputStream();
-            String result = IOUtils.toString(inputStream, Charsets.UTF_8);
-            LOGGER.info(new StringBuilder().append("Successful read, server response was ").append(connection.getResponseCode()).toString());
+            response = this.transport.execute(request);
+            if (response.getStatusCode() >= 400) {
+                LOGGER.info(new StringBuilder().append("Reading error page from ").append(url).toString());
+            } else {
+                LOGGER.info(new StringBuilder().append("Reading data from ").append(url).toString());
+            }
+            String result = IOUtils.toString(response.getBody(), Charsets.UTF_8);
+            LOGGER.info(new StringBuilder().append("Successful read, server response was ").append(response.getStatusCode()).toString());
             LOGGER.info(new StringBuilder().append("Response: ").append(result).toString());
             return result;
         } catch (IOException e) {
-            IOUtils.closeQuietly(inputStream);
-            inputStream = connection.getErrorStream();
-
-            if (inputStream != null) {
-                LOGGER.info(new StringBuilder().append("Reading error page from ").append(url).toString());
-                String result = IOUtils.toString(inputStream, Charsets.UTF_8);
-                LOGGER.info(new StringBuilder().append("Successful read, server response was ").append(connection.getResponseCode()).toString());
-                LOGGER.info(new StringBuilder().append("Response: ").append(result).toString());
-                return result;
-            }
             LOGGER.info("Request failed", e);
             throw e;
         }
         finally {
-            IOUtils.closeQuietly(inputStream);
+            IOUtils.closeQuietly(response);
         }
     }
 
@@ -102,33 +116,25 @@ public abstract class HttpAuthenticationService extends BaseAuthenticationServic
             throws IOException
     {
         Validate.notNull(url);
-        HttpURLConnection connection = createUrlConnection(url);
 
-        LOGGER.debug(new StringBuilder().append("Reading data from ").append(url).toString());
-
-        InputStream inputStream = null;
+        HttpResponse response = null;
         try {
-            inputStream = connection.getInputStream();
-            String result = IOUtils.toString(inputStream, Charsets.UTF_8);
-            LOGGER.debug(new StringBuilder().append("Successful read, server response was ").append(connection.getResponseCode()).toString());
+            response = this.transport.execute(new HttpRequest("GET", url));
+            if (response.getStatusCode() >= 400) {
+                LOGGER.debug(new StringBuilder().append("Reading error page from ").append(url).toString());
+            } else {
+                LOGGER.debug(new StringBuilder().append("Reading data from ").append(url).toString());
+            }
+            String result = IOUtils.toString(response.getBody(), Charsets.UTF_8);
+            LOGGER.debug(new StringBuilder().append("Successful read, server response was ").append(response.getStatusCode()).toString());
             LOGGER.debug(new StringBuilder().append("Response: ").append(result).toString());
             return result;
         } catch (IOException e) {
-            IOUtils.closeQuietly(inputStream);
-            inputStream = connection.getErrorStream();
-
-            if (inputStream != null) {
-                LOGGER.debug(new StringBuilder().append("Reading error page from ").append(url).toString());
-                String result = IOUtils.toString(inputStream, Charsets.UTF_8);
-                LOGGER.debug(new StringBuilder().append("Successful read, server response was ").append(connection.getResponseCode()).toString());
-                LOGGER.debug(new StringBuilder().append("Response: ").append(result).toString());
-                return result;
-            }
             LOGGER.debug("Request failed", e);
             throw e;
         }
         finally {
-            IOUtils.closeQuietly(inputStream);
+            IOUtils.closeQuietly(response);
         }
     }
 
@@ -0,0 +1,21 @@
+package com.mojang.authlib.exceptions;
+
+/**
+ * The request was not sent because the endpoint has been failing and its circuit breaker is open.
+ * {@link #getRetryAfter()} is how long until the next attempt will be let through.
+ */
+public class CircuitOpenException extends AuthenticationUnavailableException {
+    private final long retryAfter;
+
+    public CircuitOpenException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return milliseconds until the breaker lets a probe through
+     */
+    public long getRetryAfter() {
+        return this.retryAfter;
+    }
+}
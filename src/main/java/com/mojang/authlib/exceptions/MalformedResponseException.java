@@ -0,0 +1,10 @@
+package com.mojang.authlib.exceptions;
+
+/**
+ * The server answered, but the body could not be parsed as the expected response.
+ */
+public class MalformedResponseException extends AuthenticationUnavailableException {
+    public MalformedResponseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
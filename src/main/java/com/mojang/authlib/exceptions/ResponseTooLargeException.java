@@ -0,0 +1,17 @@
+package com.mojang.authlib.exceptions;
+
+/**
+ * The response body exceeded the configured maximum size and was not read to the end.
+ */
+public class ResponseTooLargeException extends AuthenticationUnavailableException {
+    private final long limit;
+
+    public ResponseTooLargeException(String message, long limit, Throwable cause) {
+        super(message, cause);
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return this.limit;
+    }
+}
@@ -0,0 +1,24 @@
+package com.mojang.authlib.exceptions;
+
+/**
+ * The server is rate limiting us. {@link #getRetryAfter()} is how long it asked us to wait, or -1 if it didn't say.
+ */
+public class TooManyRequestsException extends AuthenticationUnavailableException {
+    private final long retryAfter;
+
+    public TooManyRequestsException(String message) {
+        this(message, -1L);
+    }
+
+    public TooManyRequestsException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the requested delay in milliseconds, or -1 if unknown
+     */
+    public long getRetryAfter() {
+        return this.retryAfter;
+    }
+}
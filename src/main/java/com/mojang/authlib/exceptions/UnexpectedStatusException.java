@@ -0,0 +1,18 @@
+package com.mojang.authlib.exceptions;
+
+/**
+ * The server answered with a status that isn't a success, and without an error body saying why. Redirects end up
+ * here too, as they are not followed.
+ */
+public class UnexpectedStatusException extends AuthenticationUnavailableException {
+    private final int statusCode;
+
+    public UnexpectedStatusException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+}
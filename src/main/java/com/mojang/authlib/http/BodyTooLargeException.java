@@ -0,0 +1,19 @@
+package com.mojang.authlib.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link BoundedInputStream} once more bytes were read than allowed.
+ */
+public class BodyTooLargeException extends IOException {
+    private final long limit;
+
+    public BodyTooLargeException(long limit) {
+        super("Body is larger than " + limit + " bytes");
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return this.limit;
+    }
+}
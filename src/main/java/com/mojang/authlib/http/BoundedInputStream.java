@@ -0,0 +1,55 @@
+package com.mojang.authlib.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with {@link BodyTooLargeException} instead of reading past a fixed number of bytes.
+ */
+public class BoundedInputStream extends FilterInputStream {
+    private final long limit;
+    private long count;
+
+    public BoundedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            advance(1);
+        }
+        return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            advance(read);
+        }
+        return read;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    private void advance(long read) throws IOException {
+        this.count += read;
+        if (this.count > this.limit) {
+            throw new BodyTooLargeException(this.limit);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.mojang.authlib.http;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.util.HostsHandler;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caches host lookups in process, so requests don't depend on the JVM-wide DNS cache settings.
+ * <p>
+ * Successful lookups are kept for {@code positiveTtl}. After that the cached addresses are still handed out while
+ * a background lookup refreshes them, for up to {@code maxStale} more, so a request only waits on DNS for a host it
+ * has never seen or hasn't used in a long time. If a refresh fails the old addresses are kept until then. Failed
+ * lookups are remembered for the shorter {@code negativeTtl}. Only one lookup per host runs at a time; anyone else
+ * needing it waits for that one.
+ * <p>
+ * Static overrides, such as those loaded from the file named by {@link #FILE_PROPERTY}, pin a host to fixed
+ * addresses and are never looked up.
+ */
+public class CachingHostResolver implements HostResolver {
+    /**
+     * System property naming a properties file of {@code host=address[,address...]} overrides for
+     * {@link #getDefault()}.
+     */
+    public static final String FILE_PROPERTY = "authlib.hosts";
+    public static final long DEFAULT_POSITIVE_TTL = TimeUnit.MINUTES.toMillis(1L);
+    public static final long DEFAULT_NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(5L);
+    public static final long DEFAULT_MAX_STALE = TimeUnit.MINUTES.toMillis(5L);
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final HostResolver delegate;
+    private final Map<String, InetAddress[]> overrides;
+    private final long positiveTtl;
+    private final long negativeTtl;
+    private final long maxStale;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentMap<String, FutureTask<Entry>> lookups = new ConcurrentHashMap<String, FutureTask<Entry>>();
+    private final ThreadPoolExecutor refresher;
+
+    /**
+     * @param overrides   addresses to use for these hosts instead of looking them up
+     * @param positiveTtl milliseconds a successful lookup is used before it is refreshed
+     * @param negativeTtl milliseconds a failed lookup is remembered
+     * @param maxStale    milliseconds past {@code positiveTtl} the addresses are still used while being refreshed
+     */
+    public CachingHostResolver(HostResolver delegate, Map<String, InetAddress[]> overrides, long positiveTtl, long negativeTtl, long maxStale) {
+        Validate.notNull(delegate);
+        Validate.isTrue(positiveTtl > 0 && negativeTtl > 0 && maxStale >= 0, "Expected positive TTLs");
+        this.delegate = delegate;
+        Map<String, InetAddress[]> lowerCase = new HashMap<String, InetAddress[]>();
+        for (Map.Entry<String, InetAddress[]> override : overrides.entrySet()) {
+            Validate.notEmpty(override.getValue(), "No addresses for %s", override.getKey());
+            lowerCase.put(override.getKey().toLowerCase(), override.getValue().clone());
+        }
+        this.overrides = Collections.unmodifiableMap(lowerCase);
+        this.positiveTtl = TimeUnit.MILLISECONDS.toNanos(positiveTtl);
+        this.negativeTtl = TimeUnit.MILLISECONDS.toNanos(negativeTtl);
+        this.maxStale = TimeUnit.MILLISECONDS.toNanos(maxStale);
+        this.refresher = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("Authlib DNS #%d").setDaemon(true).build());
+        this.refresher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the resolver shared by every service, with the overrides from the file named by
+     * {@link #FILE_PROPERTY}, read once, if the property is set
+     */
+    public static CachingHostResolver getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Reads overrides from a properties file mapping host names to comma separated IP addresses. Entries that
+     * aren't IP addresses are skipped with a warning rather than looked up.
+     *
+     * @throws IOException if the file can't be read
+     */
+    public static Map<String, InetAddress[]> loadOverrides(String fileName) throws IOException {
+        Properties properties = HostsHandler.getProperties(fileName);
+        Map<String, InetAddress[]> overrides = new HashMap<String, InetAddress[]>();
+        for (String host : properties.stringPropertyNames()) {
+            String[] literals = properties.getProperty(host).split(",");
+            InetAddress[] addresses = new InetAddress[literals.length];
+            try {
+                for (int i = 0; i < literals.length; i++) {
+                    // Keep the host name on the address, as a lookup would, for logs and exception messages.
+                    addresses[i] = InetAddress.getByAddress(host, InetAddresses.forString(literals[i].trim()).getAddress());
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Ignoring override for {} in {}: {}", new Object[]{host, fileName, e.getMessage()});
+                continue;
+            } catch (UnknownHostException e) {
+                LOGGER.warn("Ignoring override for {} in {}: {}", new Object[]{host, fileName, e.getMessage()});
+                continue;
+            }
+            overrides.put(host, addresses);
+        }
+        return overrides;
+    }
+
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        String key = host.toLowerCase();
+        InetAddress[] override = this.overrides.get(key);
+        if (override != null) {
+            return override.clone();
+        }
+        Entry entry = this.entries.get(key);
+        if (entry != null) {
+            long now = System.nanoTime();
+            if (now - entry.expiresAt < 0) {
+                return entry.get(host);
+            }
+            if (entry.addresses != null && now - entry.resolvedAt < this.positiveTtl + this.maxStale) {
+                refresh(key, entry);
+                return entry.addresses.clone();
+            }
+        }
+        return load(key, entry).get(host);
+    }
+
+    /**
+     * Looks up the hosts in the background, so the first request to each finds them cached.
+     */
+    public void prefetch(String... hosts) {
+        for (String host : hosts) {
+            String key = host.toLowerCase();
+            if (this.overrides.containsKey(key)) {
+                continue;
+            }
+            Entry entry = this.entries.get(key);
+            if (entry == null || System.nanoTime() - entry.expiresAt >= 0) {
+                refresh(key, entry == null ? new Entry(null, null, 0L, 0L) : entry);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        this.entries.clear();
+    }
+
+    /**
+     * @return the number of cached lookups, successful or not
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    private void refresh(final String key, final Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.refresher.execute(new Runnable() {
+                public void run() {
+                    try {
+                        load(key, entry);
+                    } catch (UnknownHostException ignored) {
+                        // Only thrown if interrupted, which means the refresher is shutting down.
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Couldn't refresh " + key, e);
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Runs the lookup, or waits for the one already running for the host.
+     */
+    private Entry load(final String key, final Entry previous) throws UnknownHostException {
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+            public Entry call() {
+                return lookup(key, previous);
+            }
+        });
+        FutureTask<Entry> running = this.lookups.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                this.lookups.remove(key, task);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            UnknownHostException failure = new UnknownHostException("Interrupted while looking up " + key);
+            failure.initCause(e);
+            throw failure;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private Entry lookup(String key, Entry previous) {
+        long start = System.nanoTime();
+        Entry entry;
+        try {
+            InetAddress[] addresses = this.delegate.resolve(key);
+            entry = new Entry(addresses, null, start, start + this.positiveTtl);
+        } catch (UnknownHostException e) {
+            if (previous != null && previous.addresses != null && start - previous.resolvedAt < this.positiveTtl + this.maxStale) {
+                LOGGER.debug("Couldn't refresh {}, keeping the previous addresses: {}", new Object[]{key, e.getMessage()});
+                entry = new Entry(previous.addresses, null, previous.resolvedAt, start + this.negativeTtl);
+            } else {
+                entry = new Entry(null, e, start, start + this.negativeTtl);
+            }
+        }
+        this.entries.put(key, entry);
+        return entry;
+    }
+
+    private static final class Entry {
+        private final InetAddress[] addresses;
+        private final UnknownHostException failure;
+        private final long resolvedAt;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(InetAddress[] addresses, UnknownHostException failure, long resolvedAt, long expiresAt) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.resolvedAt = resolvedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        private InetAddress[] get(String host) throws UnknownHostException {
+            if (this.addresses == null) {
+                // A fresh exception per caller, with the caller's stack, but saying what the lookup said.
+                UnknownHostException e = new UnknownHostException(this.failure == null ? host : this.failure.getMessage());
+                e.initCause(this.failure);
+                throw e;
+            }
+            return this.addresses.clone();
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final CachingHostResolver INSTANCE = create();
+
+        private static CachingHostResolver create() {
+            Map<String, InetAddress[]> overrides = Collections.emptyMap();
+            String fileName = System.getProperty(FILE_PROPERTY);
+            if (fileName != null) {
+                try {
+                    overrides = loadOverrides(fileName);
+                    LOGGER.info("Loaded {} host overrides from {}", new Object[]{Integer.valueOf(overrides.size()), fileName});
+                } catch (IOException e) {
+                    LOGGER.warn("Couldn't load host overrides from " + fileName + ", using none", e);
+                }
+            }
+            return new CachingHostResolver(HostResolver.SYSTEM, overrides, DEFAULT_POSITIVE_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_STALE);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.mojang.authlib.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes the gzip and deflate content codings. Bodies are inflated as the JSON parser reads them, not buffered
+ * first.
+ */
+public final class ContentEncoding {
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    public static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Wraps a body in a decoder for its {@code Content-Encoding}. An empty body is returned as is, whatever its
+     * declared coding, as servers send those for 204s.
+     *
+     * @throws IOException if the coding isn't supported or the body doesn't start like one in that coding
+     */
+    public static InputStream decode(String contentEncoding, InputStream in) throws IOException {
+        if (contentEncoding == null) {
+            return in;
+        }
+        String coding = contentEncoding.trim().toLowerCase();
+        if (coding.isEmpty() || "identity".equals(coding)) {
+            return in;
+        }
+        boolean gzip = "gzip".equals(coding) || "x-gzip".equals(coding);
+        if (!gzip && !"deflate".equals(coding)) {
+            throw new IOException("Unsupported Content-Encoding '" + contentEncoding + "'");
+        }
+        PushbackInputStream peek = new PushbackInputStream(in, 2);
+        int first = peek.read();
+        if (first == -1) {
+            return peek;
+        }
+        int second = peek.read();
+        if (second != -1) {
+            peek.unread(second);
+        }
+        peek.unread(first);
+        if (gzip) {
+            return new GZIPInputStream(peek, BUFFER_SIZE);
+        }
+        // RFC 7230 deflate is zlib wrapped, but some servers send a raw deflate stream; a zlib header is a
+        // multiple of 31 with compression method 8.
+        boolean zlib = (first & 0x0F) == 8 && second != -1 && ((first << 8) | second) % 31 == 0;
+        return new InflatingInputStream(peek, new Inflater(!zlib));
+    }
+
+    /**
+     * Releases its inflater on close instead of leaving it to the garbage collector.
+     */
+    private static final class InflatingInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        InflatingInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                this.inf.end();
+                super.close();
+            }
+        }
+    }
+}
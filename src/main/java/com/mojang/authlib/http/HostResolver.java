@@ -0,0 +1,20 @@
+package com.mojang.authlib.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Turns the host of a URL into the addresses {@link PooledHttpTransport} connects to, in the order to try them.
+ */
+public interface HostResolver {
+    /**
+     * The JVM's own resolver.
+     */
+    HostResolver SYSTEM = new HostResolver() {
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            return InetAddress.getAllByName(host);
+        }
+    };
+
+    InetAddress[] resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,70 @@
+package com.mojang.authlib.http;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class HttpRequest {
+    private final String method;
+    private final URL url;
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private RequestBody body;
+
+    public HttpRequest(String method, URL url) {
+        Validate.notNull(method);
+        Validate.notNull(url);
+        this.method = method;
+        this.url = url;
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+
+    public URL getUrl() {
+        return this.url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+
+    public HttpRequest setHeader(String name, String value) {
+        this.headers.put(name, value);
+        return this;
+    }
+
+    public RequestBody getBody() {
+        return this.body;
+    }
+
+    public HttpRequest setBody(RequestBody body) {
+        this.body = body;
+        setHeader("Content-Type", body.getContentType());
+        return this;
+    }
+
+    public HttpRequest setBody(final byte[] body, final String contentType) {
+        return setBody(new RequestBody() {
+            public String getContentType() {
+                return contentType;
+            }
+
+            public long getContentLength() {
+                return body.length;
+            }
+
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body);
+            }
+        });
+    }
+
+    public String toString() {
+        return this.method + " " + this.url;
+    }
+}
@@ -0,0 +1,19 @@
+package com.mojang.authlib.http;
+
+import java.io.Closeable;
+import java.io.InputStream;
+
+/**
+ * Status, headers and body of a response. Unlike {@link java.net.HttpURLConnection} the body is the same stream
+ * for successful and error responses; callers check {@link #getStatusCode()} if they care.
+ */
+public interface HttpResponse extends Closeable {
+    int getStatusCode();
+
+    /**
+     * @return the header value, or null if absent. Header names are matched case-insensitively.
+     */
+    String getHeader(String name);
+
+    InputStream getBody();
+}
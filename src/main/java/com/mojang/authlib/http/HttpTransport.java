@@ -0,0 +1,23 @@
+package com.mojang.authlib.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Moves a single {@link HttpRequest} over the wire. Implementations are shared between all requests of an
+ * {@link com.mojang.authlib.HttpAuthenticationService} and must be thread safe.
+ */
+public interface HttpTransport extends Closeable {
+    /**
+     * Sends the request and returns once the status line and headers have been read. The caller owns the
+     * returned response and must close it, which hands the underlying connection back for reuse.
+     */
+    HttpResponse execute(HttpRequest request) throws IOException;
+
+    /**
+     * Opens a connection to the host of the given URL ahead of time, so the first real request does not pay
+     * for DNS, TCP and TLS setup. Transports without connection reuse may treat this as a no-op.
+     */
+    void preconnect(URL url) throws IOException;
+}
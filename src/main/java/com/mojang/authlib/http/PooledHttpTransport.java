@@ -0,0 +1,769 @@
+package com.mojang.authlib.http;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal HTTP/1.1 client that keeps connections alive and reuses them across requests. Each host gets its own
+ * bounded pool; callers wait for a free connection rather than opening an unbounded number of sockets, and idle
+ * connections are closed by a background sweep once they exceed the idle timeout.
+ * <p>
+ * Only direct and SOCKS connections are supported; HTTP proxies go through {@link UrlConnectionTransport}.
+ */
+public class PooledHttpTransport implements HttpTransport {
+    private static final Logger LOGGER = LogManager.getLogger();
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+    public static final int DEFAULT_TIMEOUT = 15000;
+    private static final long STALE_CHECK_AFTER = 1000L;
+    private static final int MAX_DRAIN = 64 * 1024;
+    private final Proxy proxy;
+    private final int maxConnectionsPerHost;
+    private final long idleTimeout;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final ConcurrentMap<Route, RoutePool> pools = new ConcurrentHashMap<Route, RoutePool>();
+    private final ScheduledExecutorService evictor;
+    private volatile HostResolver hostResolver = HostResolver.SYSTEM;
+    private volatile boolean closed;
+
+    public PooledHttpTransport(Proxy proxy) {
+        this(proxy, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT, DEFAULT_TIMEOUT, DEFAULT_TIMEOUT);
+    }
+
+    public PooledHttpTransport(Proxy proxy, int maxConnectionsPerHost, long idleTimeout, int connectTimeout, int readTimeout) {
+        Validate.notNull(proxy);
+        Validate.isTrue(proxy.type() != Proxy.Type.HTTP, "HTTP proxies are not supported by the pooled transport");
+        Validate.isTrue(maxConnectionsPerHost > 0, "maxConnectionsPerHost must be positive");
+        this.proxy = proxy;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeout = idleTimeout;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Authlib HTTP Evictor #%d").setDaemon(true).build());
+        long sweep = Math.max(idleTimeout / 2, 1000L);
+        this.evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdle();
+            }
+        }, sweep, sweep, TimeUnit.MILLISECONDS);
+    }
+
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        if (this.closed) {
+            throw new IOException("Transport has been closed");
+        }
+        RoutePool pool = getPool(Route.of(request.getUrl()));
+        pool.acquirePermit();
+        Connection connection = null;
+        try {
+            connection = pool.takeIdle();
+            if (connection != null) {
+                long sent = connection.sent.getCount();
+                try {
+                    return exchange(connection, request);
+                } catch (IOException e) {
+                    connection.closeQuietly();
+                    if (!canRetry(request, e, connection.sent.getCount() > sent)) {
+                        throw e;
+                    }
+                    LOGGER.debug("Reused connection to {} failed, retrying on a new one", new Object[]{pool.route});
+                }
+            }
+            connection = pool.open();
+            return exchange(connection, request);
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.closeQuietly();
+            }
+            pool.permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            if (connection != null) {
+                connection.closeQuietly();
+            }
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * The server may drop a keep-alive connection between our stale check and the request. A GET or HEAD can
+     * always be sent again. Anything else only if none of it left this side: a connection closed without a byte
+     * of response doesn't mean the server never acted on the request, so a POST that went out is not resent.
+     * Timeouts are never retried: the server is there, just slow, and trying again would only double the wait.
+     */
+    private static boolean canRetry(HttpRequest request, IOException e, boolean sentAnything) {
+        if (e instanceof SocketTimeoutException) {
+            return false;
+        }
+        return !sentAnything || "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    }
+
+    public void preconnect(URL url) throws IOException {
+        RoutePool pool = getPool(Route.of(url));
+        if (!pool.permits.tryAcquire()) {
+            return;
+        }
+        try {
+            if (pool.idleCount() == 0) {
+                pool.offerIdle(pool.open());
+            }
+        } finally {
+            pool.permits.release();
+        }
+    }
+
+    public void close() {
+        this.closed = true;
+        this.evictor.shutdownNow();
+        for (RoutePool pool : this.pools.values()) {
+            pool.closeIdle();
+        }
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return this.maxConnectionsPerHost;
+    }
+
+    public HostResolver getHostResolver() {
+        return this.hostResolver;
+    }
+
+    /**
+     * Sets how host names are turned into addresses for new connections. Defaults to {@link HostResolver#SYSTEM}.
+     * Not used behind a SOCKS proxy, which resolves host names itself.
+     */
+    public void setHostResolver(HostResolver hostResolver) {
+        Validate.notNull(hostResolver);
+        this.hostResolver = hostResolver;
+    }
+
+    protected Socket connect(Route route) throws IOException {
+        Socket socket = openSocket(route);
+        try {
+            socket.setSoTimeout(this.readTimeout);
+            if (route.secure) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, route.host, route.port, true);
+                SSLParameters parameters = ssl.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ssl.setSSLParameters(parameters);
+                ssl.startHandshake();
+                socket = ssl;
+            }
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to the first of the host's addresses that accepts, so one unreachable address doesn't fail the
+     * request. Through a SOCKS proxy the host name is handed to the proxy unresolved: the client may not be able
+     * to resolve it at all, and looking it up locally would leak it outside the proxy.
+     */
+    private Socket openSocket(Route route) throws IOException {
+        if (this.proxy.type() == Proxy.Type.SOCKS) {
+            Socket socket = new Socket(this.proxy);
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(InetSocketAddress.createUnresolved(route.host, route.port), this.connectTimeout);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+        InetAddress[] addresses = this.hostResolver.resolve(route.host);
+        IOException failure = null;
+        for (InetAddress address : addresses) {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(new InetSocketAddress(address, route.port), this.connectTimeout);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                LOGGER.debug("Couldn't connect to {} at {}: {}", new Object[]{route, address, e.getMessage()});
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        throw failure;
+    }
+
+    private RoutePool getPool(Route route) {
+        RoutePool pool = this.pools.get(route);
+        if (pool == null) {
+            RoutePool created = new RoutePool(route);
+            pool = this.pools.putIfAbsent(route, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
+    }
+
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - this.idleTimeout;
+        for (RoutePool pool : this.pools.values()) {
+            pool.evictOlderThan(deadline);
+        }
+    }
+
+    private HttpResponse exchange(Connection connection, HttpRequest request) throws IOException {
+        URL url = request.getUrl();
+        RequestBody body = request.getBody();
+        long requestLength = body == null ? 0 : body.getContentLength();
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(request.getMethod()).append(' ').append(target).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(connection.route.hostHeader).append("\r\n");
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (body != null) {
+            if (requestLength >= 0) {
+                head.append("Content-Length: ").append(requestLength).append("\r\n");
+            } else {
+                head.append("Transfer-Encoding: chunked\r\n");
+            }
+        }
+        head.append("Connection: keep-alive\r\n\r\n");
+
+        OutputStream out = connection.out;
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            if (requestLength >= 0) {
+                body.writeTo(out);
+            } else {
+                ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+                body.writeTo(chunked);
+                chunked.finish();
+            }
+        }
+        out.flush();
+
+        InputStream in = connection.in;
+        String statusLine;
+        Map<String, String> headers;
+        int status;
+        do {
+            statusLine = readLine(in);
+            if (statusLine == null) {
+                throw new EOFException("Connection closed before response from " + connection.route);
+            }
+            status = parseStatus(statusLine);
+            headers = readHeaders(in);
+        } while (status >= 100 && status < 200);
+
+        boolean http10 = statusLine.startsWith("HTTP/1.0");
+        String connectionHeader = headers.get("Connection");
+        boolean keepAlive = connectionHeader == null ? !http10 : !connectionHeader.equalsIgnoreCase("close") && (!http10 || connectionHeader.equalsIgnoreCase("keep-alive"));
+
+        InputStream bodyStream;
+        String contentLength = headers.get("Content-Length");
+        String transferEncoding = headers.get("Transfer-Encoding");
+        if ("HEAD".equals(request.getMethod()) || status == 204 || status == 304) {
+            bodyStream = new FixedLengthInputStream(in, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            bodyStream = new ChunkedInputStream(in);
+        } else if (contentLength != null) {
+            try {
+                bodyStream = new FixedLengthInputStream(in, Long.parseLong(contentLength.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length '" + contentLength + "' from " + connection.route);
+            }
+        } else {
+            bodyStream = in;
+            keepAlive = false;
+        }
+        return new PooledResponse(connection, status, headers, bodyStream, keepAlive);
+    }
+
+    private static int parseStatus(String statusLine) throws IOException {
+        int start = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || start < 0 || statusLine.length() < start + 4) {
+            throw new IOException("Malformed status line '" + statusLine + "'");
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(start + 1, start + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line '" + statusLine + "'");
+        }
+    }
+
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            String previous = headers.get(name);
+            headers.put(name, previous == null ? value : previous + ", " + value);
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed while reading headers");
+        }
+        return headers;
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    static final class Route {
+        final String host;
+        final int port;
+        final boolean secure;
+        final String hostHeader;
+
+        private Route(String host, int port, boolean secure) {
+            this.host = host;
+            this.port = port;
+            this.secure = secure;
+            this.hostHeader = port == (secure ? 443 : 80) ? host : host + ":" + port;
+        }
+
+        static Route of(URL url) {
+            String protocol = url.getProtocol();
+            boolean secure;
+            if ("https".equalsIgnoreCase(protocol)) {
+                secure = true;
+            } else if ("http".equalsIgnoreCase(protocol)) {
+                secure = false;
+            } else {
+                throw new IllegalArgumentException("Unsupported protocol '" + protocol + "'");
+            }
+            int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+            return new Route(url.getHost().toLowerCase(), port, secure);
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Route)) return false;
+            Route route = (Route) o;
+            return this.port == route.port && this.secure == route.secure && this.host.equals(route.host);
+        }
+
+        public int hashCode() {
+            return 31 * (31 * this.host.hashCode() + this.port) + (this.secure ? 1 : 0);
+        }
+
+        public String toString() {
+            return (this.secure ? "https://" : "http://") + this.hostHeader;
+        }
+    }
+
+    private final class RoutePool {
+        private final Route route;
+        private final Semaphore permits;
+        private final Deque<Connection> idle = new ArrayDeque<Connection>();
+
+        private RoutePool(Route route) {
+            this.route = route;
+            this.permits = new Semaphore(PooledHttpTransport.this.maxConnectionsPerHost, true);
+        }
+
+        void acquirePermit() throws IOException {
+            try {
+                if (!this.permits.tryAcquire(PooledHttpTransport.this.connectTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new SocketTimeoutException("Timed out waiting for a free connection to " + this.route);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for a connection to " + this.route, e);
+            }
+        }
+
+        Connection open() throws IOException {
+            LOGGER.debug("Opening connection to {}", new Object[]{this.route});
+            return new Connection(this, connect(this.route));
+        }
+
+        Connection takeIdle() {
+            while (true) {
+                Connection connection;
+                synchronized (this.idle) {
+                    connection = this.idle.pollFirst();
+                }
+                if (connection == null) {
+                    return null;
+                }
+                if (connection.isReusable()) {
+                    return connection;
+                }
+                connection.closeQuietly();
+            }
+        }
+
+        void offerIdle(Connection connection) {
+            connection.lastUsed = System.currentTimeMillis();
+            synchronized (this.idle) {
+                if (!PooledHttpTransport.this.closed && this.idle.size() < PooledHttpTransport.this.maxConnectionsPerHost) {
+                    this.idle.offerFirst(connection);
+                    return;
+                }
+            }
+            connection.closeQuietly();
+        }
+
+        int idleCount() {
+            synchronized (this.idle) {
+                return this.idle.size();
+            }
+        }
+
+        void evictOlderThan(long deadline) {
+            List<Connection> evicted = new ArrayList<Connection>();
+            synchronized (this.idle) {
+                for (Iterator<Connection> iterator = this.idle.iterator(); iterator.hasNext(); ) {
+                    Connection connection = iterator.next();
+                    if (connection.lastUsed < deadline) {
+                        iterator.remove();
+                        evicted.add(connection);
+                    }
+                }
+            }
+            for (Connection connection : evicted) {
+                LOGGER.debug("Closing idle connection to {}", new Object[]{this.route});
+                connection.closeQuietly();
+            }
+        }
+
+        void closeIdle() {
+            evictOlderThan(Long.MAX_VALUE);
+        }
+    }
+
+    private static final class Connection {
+        private final RoutePool pool;
+        private final Route route;
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        // Counts what the socket accepted, below the buffer, to tell whether a failed request left this side.
+        private final CountingOutputStream sent;
+        private long lastUsed = System.currentTimeMillis();
+
+        Connection(RoutePool pool, Socket socket) throws IOException {
+            this.pool = pool;
+            this.route = pool.route;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.sent = new CountingOutputStream(socket.getOutputStream());
+            this.out = new BufferedOutputStream(this.sent, 8192);
+        }
+
+        boolean isReusable() {
+            if (this.socket.isClosed() || this.socket.isInputShutdown() || this.socket.isOutputShutdown()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - this.lastUsed < STALE_CHECK_AFTER) {
+                return true;
+            }
+            // A half-closed connection reads EOF immediately; a live one times out.
+            try {
+                int timeout = this.socket.getSoTimeout();
+                this.socket.setSoTimeout(1);
+                try {
+                    this.in.mark(1);
+                    if (this.in.read() == -1) {
+                        return false;
+                    }
+                    this.in.reset();
+                    return true;
+                } finally {
+                    this.socket.setSoTimeout(timeout);
+                }
+            } catch (SocketTimeoutException e) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                this.socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class PooledResponse implements HttpResponse {
+        private final Connection connection;
+        private final int status;
+        private final Map<String, String> headers;
+        private final InputStream body;
+        private final boolean keepAlive;
+        private boolean closed;
+
+        PooledResponse(Connection connection, int status, Map<String, String> headers, InputStream body, boolean keepAlive) {
+            this.connection = connection;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.keepAlive = keepAlive;
+        }
+
+        public int getStatusCode() {
+            return this.status;
+        }
+
+        public String getHeader(String name) {
+            return this.headers.get(name);
+        }
+
+        public InputStream getBody() {
+            return this.body;
+        }
+
+        public synchronized void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            boolean reusable = this.keepAlive && drain();
+            if (reusable) {
+                this.connection.pool.offerIdle(this.connection);
+            } else {
+                this.connection.closeQuietly();
+            }
+            this.connection.pool.permits.release();
+        }
+
+        private boolean drain() {
+            try {
+                byte[] buffer = new byte[4096];
+                int drained = 0;
+                int read;
+                while (drained < MAX_DRAIN && (read = this.body.read(buffer)) != -1) {
+                    drained += read;
+                }
+                return this.body.read() == -1;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class FixedLengthInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int b = this.in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed with " + this.remaining + " bytes of body left");
+            }
+            this.remaining--;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int read = this.in.read(b, off, (int) Math.min(len, this.remaining));
+            if (read == -1) {
+                throw new EOFException("Connection closed with " + this.remaining + " bytes of body left");
+            }
+            this.remaining -= read;
+            return read;
+        }
+
+        public int available() throws IOException {
+            return (int) Math.min(this.in.available(), this.remaining);
+        }
+
+        public void close() {
+            // The socket belongs to the pool; PooledResponse decides whether it survives.
+        }
+    }
+
+    private static final class ChunkedOutputStream extends OutputStream {
+        private static final byte[] CRLF = {'\r', '\n'};
+        private final OutputStream out;
+        private final byte[] buffer = new byte[8192];
+        private int count;
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        public void write(int b) throws IOException {
+            if (this.count == this.buffer.length) {
+                flushChunk();
+            }
+            this.buffer[this.count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.count == this.buffer.length) {
+                    flushChunk();
+                }
+                int copy = Math.min(len, this.buffer.length - this.count);
+                System.arraycopy(b, off, this.buffer, this.count, copy);
+                this.count += copy;
+                off += copy;
+                len -= copy;
+            }
+        }
+
+        public void flush() throws IOException {
+            flushChunk();
+            this.out.flush();
+        }
+
+        void finish() throws IOException {
+            flushChunk();
+            this.out.write('0');
+            this.out.write(CRLF);
+            this.out.write(CRLF);
+        }
+
+        private void flushChunk() throws IOException {
+            if (this.count == 0) {
+                return;
+            }
+            this.out.write(Integer.toHexString(this.count).getBytes(StandardCharsets.ISO_8859_1));
+            this.out.write(CRLF);
+            this.out.write(this.buffer, 0, this.count);
+            this.out.write(CRLF);
+            this.count = 0;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static final class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long chunkRemaining;
+        private boolean eof;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (this.eof) {
+                return false;
+            }
+            if (this.chunkRemaining == 0) {
+                String line = readLine(this.in);
+                if (line != null && line.isEmpty()) {
+                    line = readLine(this.in);
+                }
+                if (line == null) {
+                    throw new EOFException("Connection closed inside chunked body");
+                }
+                int extension = line.indexOf(';');
+                try {
+                    this.chunkRemaining = Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed chunk header '" + line + "'");
+                }
+                if (this.chunkRemaining == 0) {
+                    readHeaders(this.in);
+                    this.eof = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = this.in.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed inside chunked body");
+            }
+            this.chunkRemaining--;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = this.in.read(b, off, (int) Math.min(len, this.chunkRemaining));
+            if (read == -1) {
+                throw new EOFException("Connection closed inside chunked body");
+            }
+            this.chunkRemaining -= read;
+            return read;
+        }
+
+        public void close() {
+        }
+    }
+}
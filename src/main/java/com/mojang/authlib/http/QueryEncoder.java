@@ -0,0 +1,61 @@
+package com.mojang.authlib.http;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Form encodes query values exactly like {@code URLEncoder.encode(value, "UTF-8")}, without the intermediate
+ * strings. Player names and server ids are plain ASCII, so those are written straight into the builder; anything
+ * else goes through {@link URLEncoder}.
+ */
+public final class QueryEncoder {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private QueryEncoder() {
+    }
+
+    public static StringBuilder append(StringBuilder builder, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 128) {
+                return appendSlow(builder, value);
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (UNRESERVED[c]) {
+                builder.append(c);
+            } else if (c == ' ') {
+                builder.append('+');
+            } else {
+                builder.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return builder;
+    }
+
+    private static StringBuilder appendSlow(StringBuilder builder, String value) {
+        try {
+            return builder.append(URLEncoder.encode(value, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is always supported", e);
+        }
+    }
+}
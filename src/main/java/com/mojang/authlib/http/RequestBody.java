@@ -0,0 +1,22 @@
+package com.mojang.authlib.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Body of an {@link HttpRequest}, written straight to the connection. {@link #writeTo(OutputStream)} may be called
+ * more than once if a transport retries the request on a new connection.
+ */
+public interface RequestBody {
+    String getContentType();
+
+    /**
+     * @return the exact number of bytes {@link #writeTo(OutputStream)} will write, or -1 to send the body chunked
+     */
+    long getContentLength() throws IOException;
+
+    /**
+     * Writes the body. Implementations must not close the stream.
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,94 @@
+package com.mojang.authlib.http;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Transport backed by {@link HttpURLConnection}. Connection reuse is left to the JVM-wide keep-alive cache, so
+ * this is only used where {@link PooledHttpTransport} can't go, such as through an HTTP proxy. Host names are
+ * resolved by the JVM or the proxy, never by a {@link HostResolver}.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final Proxy proxy;
+
+    public UrlConnectionTransport(Proxy proxy) {
+        Validate.notNull(proxy);
+        this.proxy = proxy;
+    }
+
+    protected HttpURLConnection createUrlConnection(URL url) throws IOException {
+        Validate.notNull(url);
+        LOGGER.debug(new StringBuilder().append("Opening connection to ").append(url).toString());
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection(this.proxy);
+        connection.setConnectTimeout(15000);
+        connection.setReadTimeout(15000);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        final HttpURLConnection connection = createUrlConnection(request.getUrl());
+        connection.setRequestMethod(request.getMethod());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        RequestBody body = request.getBody();
+        if (body != null) {
+            long length = body.getContentLength();
+            if (length >= 0) {
+                connection.setFixedLengthStreamingMode(length);
+            } else {
+                connection.setChunkedStreamingMode(8192);
+            }
+            connection.setDoOutput(true);
+            OutputStream outputStream = null;
+            try {
+                outputStream = connection.getOutputStream();
+                body.writeTo(outputStream);
+            } finally {
+                IOUtils.closeQuietly(outputStream);
+            }
+        }
+
+        final int status = connection.getResponseCode();
+        InputStream stream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        final InputStream responseBody = stream == null ? new ByteArrayInputStream(new byte[0]) : stream;
+
+        return new HttpResponse() {
+            public int getStatusCode() {
+                return status;
+            }
+
+            public String getHeader(String name) {
+                return connection.getHeaderField(name);
+            }
+
+            public InputStream getBody() {
+                return responseBody;
+            }
+
+            public void close() {
+                IOUtils.closeQuietly(responseBody);
+            }
+        };
+    }
+
+    public void preconnect(URL url) {
+    }
+
+    public void close() {
+    }
+}
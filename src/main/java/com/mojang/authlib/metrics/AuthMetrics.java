@@ -0,0 +1,116 @@
+package com.mojang.authlib.metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang3.Validate;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Request, cache and gauge metrics of one authentication service. The getters return immutable snapshots, and
+ * the same view can be published over JMX with {@link #registerMBean(String)}.
+ */
+public class AuthMetrics implements AuthMetricsMXBean {
+    public static final String DOMAIN = "com.mojang.authlib";
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+    private final ConcurrentMap<String, Cache<?, ?>> caches = new ConcurrentHashMap<String, Cache<?, ?>>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    /**
+     * @return the metrics of the named endpoint, created on first use
+     */
+    public EndpointMetrics endpoint(String name) {
+        EndpointMetrics metrics = this.endpoints.get(name);
+        if (metrics == null) {
+            EndpointMetrics created = new EndpointMetrics(name);
+            metrics = this.endpoints.putIfAbsent(name, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    public void registerCache(String name, Cache<?, ?> cache) {
+        Validate.notNull(cache);
+        this.caches.put(name, cache);
+    }
+
+    public void registerGauge(String name, Gauge gauge) {
+        Validate.notNull(gauge);
+        this.gauges.put(name, gauge);
+    }
+
+    public Map<String, EndpointSnapshot> getEndpoints() {
+        Map<String, EndpointSnapshot> result = new TreeMap<String, EndpointSnapshot>();
+        for (EndpointMetrics metrics : this.endpoints.values()) {
+            result.put(metrics.getName(), metrics.snapshot());
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    public Map<String, CacheSnapshot> getCaches() {
+        Map<String, CacheSnapshot> result = new TreeMap<String, CacheSnapshot>();
+        for (Map.Entry<String, Cache<?, ?>> entry : this.caches.entrySet()) {
+            result.put(entry.getKey(), CacheSnapshot.of(entry.getKey(), entry.getValue()));
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    public Map<String, Long> getGauges() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Gauge> entry : this.gauges.entrySet()) {
+            result.put(entry.getKey(), Long.valueOf(entry.getValue().getValue()));
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * Clears request latencies and error counts. Cache statistics belong to the caches and are left alone.
+     */
+    public void reset() {
+        for (EndpointMetrics metrics : this.endpoints.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Publishes these metrics on the platform MBean server as {@code com.mojang.authlib:type=AuthMetrics,name=<name>}.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = objectName(name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void unregisterMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = objectName(name);
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=AuthMetrics,name=" + ObjectName.quote(name));
+    }
+
+    public String toString() {
+        return "AuthMetrics{endpoints=" + getEndpoints().values() + ", caches=" + getCaches().values() + ", gauges=" + getGauges() + "}";
+    }
+
+    public interface Gauge {
+        long getValue();
+    }
+}
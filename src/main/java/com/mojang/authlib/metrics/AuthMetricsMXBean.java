@@ -0,0 +1,16 @@
+package com.mojang.authlib.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of an {@link AuthMetrics} registry.
+ */
+public interface AuthMetricsMXBean {
+    Map<String, EndpointSnapshot> getEndpoints();
+
+    Map<String, CacheSnapshot> getCaches();
+
+    Map<String, Long> getGauges();
+
+    void reset();
+}
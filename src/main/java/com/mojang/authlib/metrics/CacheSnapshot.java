@@ -0,0 +1,58 @@
+package com.mojang.authlib.metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Point-in-time statistics of a registered Guava cache. The cache must be built with {@code recordStats()} for
+ * the hit, miss and eviction counts to be populated.
+ */
+public class CacheSnapshot {
+    private final String name;
+    private final long size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public CacheSnapshot(String name, long size, long hits, long misses, long evictions) {
+        this.name = name;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    static CacheSnapshot of(String name, Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        return new CacheSnapshot(name, cache.size(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getSize() {
+        return this.size;
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    public double getHitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 1.0D : (double) this.hits / requests;
+    }
+
+    public String toString() {
+        return this.name + "{size=" + this.size + ", hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions + "}";
+    }
+}
@@ -0,0 +1,111 @@
+package com.mojang.authlib.metrics;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the requests made to one endpoint. A request is bracketed by {@link #start()} and
+ * {@link #stop(long, Throwable)}.
+ */
+public class EndpointMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesDecoded = new AtomicLong();
+    private final ConcurrentMap<Class<?>, AtomicLong> errors = new ConcurrentHashMap<Class<?>, AtomicLong>();
+
+    EndpointMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the start timestamp to hand to {@link #stop(long, Throwable)}
+     */
+    public long start() {
+        this.inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param error what the request failed with, or null if it succeeded
+     */
+    public void stop(long start, Throwable error) {
+        this.latency.record(System.nanoTime() - start);
+        this.inFlight.decrementAndGet();
+        if (error != null) {
+            this.failures.incrementAndGet();
+            AtomicLong counter = this.errors.get(error.getClass());
+            if (counter == null) {
+                // Only the first error of each type allocates.
+                AtomicLong created = new AtomicLong();
+                counter = this.errors.putIfAbsent(error.getClass(), created);
+                if (counter == null) {
+                    counter = created;
+                }
+            }
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the size of a response body as it came over the wire and after decoding its content coding.
+     */
+    public void recordTransfer(long received, long decoded) {
+        this.bytesReceived.addAndGet(received);
+        this.bytesDecoded.addAndGet(decoded);
+    }
+
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return failure counts keyed by exception class name
+     */
+    public Map<String, Long> getErrors() {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (Map.Entry<Class<?>, AtomicLong> entry : this.errors.entrySet()) {
+            builder.put(entry.getKey().getName(), Long.valueOf(entry.getValue().get()));
+        }
+        return builder.build();
+    }
+
+    public long getBytesReceived() {
+        return this.bytesReceived.get();
+    }
+
+    public long getBytesDecoded() {
+        return this.bytesDecoded.get();
+    }
+
+    public EndpointSnapshot snapshot() {
+        return new EndpointSnapshot(this.name, this.latency.getCount(), this.failures.get(), this.inFlight.get(), this.latency.getMeanMicros(), this.latency.getPercentileMicros(0.5D), this.latency.getPercentileMicros(0.99D), this.latency.getPercentileMicros(0.999D), this.latency.getMaxMicros(), getErrors(), this.bytesReceived.get(), this.bytesDecoded.get());
+    }
+
+    public void reset() {
+        this.latency.reset();
+        this.failures.set(0L);
+        this.errors.clear();
+        this.bytesReceived.set(0L);
+        this.bytesDecoded.set(0L);
+    }
+}
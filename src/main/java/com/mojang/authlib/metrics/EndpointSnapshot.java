@@ -0,0 +1,106 @@
+package com.mojang.authlib.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of an {@link EndpointMetrics}. Latencies are in microseconds.
+ */
+public class EndpointSnapshot {
+    private final String name;
+    private final long requests;
+    private final long failures;
+    private final int inFlight;
+    private final double meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+    private final Map<String, Long> errors;
+    private final long bytesReceived;
+    private final long bytesDecoded;
+
+    public EndpointSnapshot(String name, long requests, long failures, int inFlight, double meanMicros, long p50Micros, long p99Micros, long p999Micros, long maxMicros, Map<String, Long> errors) {
+        this(name, requests, failures, inFlight, meanMicros, p50Micros, p99Micros, p999Micros, maxMicros, errors, 0L, 0L);
+    }
+
+    public EndpointSnapshot(String name, long requests, long failures, int inFlight, double meanMicros, long p50Micros, long p99Micros, long p999Micros, long maxMicros, Map<String, Long> errors, long bytesReceived, long bytesDecoded) {
+        this.name = name;
+        this.requests = requests;
+        this.failures = failures;
+        this.inFlight = inFlight;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+        this.errors = errors;
+        this.bytesReceived = bytesReceived;
+        this.bytesDecoded = bytesDecoded;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getRequests() {
+        return this.requests;
+    }
+
+    public long getFailures() {
+        return this.failures;
+    }
+
+    public int getInFlight() {
+        return this.inFlight;
+    }
+
+    public double getMeanMicros() {
+        return this.meanMicros;
+    }
+
+    public long getP50Micros() {
+        return this.p50Micros;
+    }
+
+    public long getP99Micros() {
+        return this.p99Micros;
+    }
+
+    public long getP999Micros() {
+        return this.p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return this.maxMicros;
+    }
+
+    public Map<String, Long> getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * @return response bytes received over the wire
+     */
+    public long getBytesReceived() {
+        return this.bytesReceived;
+    }
+
+    /**
+     * @return response bytes after decoding, the same as {@link #getBytesReceived()} when nothing was compressed
+     */
+    public long getBytesDecoded() {
+        return this.bytesDecoded;
+    }
+
+    /**
+     * @return decoded bytes per byte received, or 1 before any response was read
+     */
+    public double getCompressionRatio() {
+        return this.bytesReceived == 0 ? 1.0D : (double) this.bytesDecoded / this.bytesReceived;
+    }
+
+    public String toString() {
+        return this.name + "{requests=" + this.requests + ", failures=" + this.failures + ", inFlight=" + this.inFlight + ", p50=" + this.p50Micros + "us, p99=" + this.p99Micros + "us, max=" + this.maxMicros + "us, received=" + this.bytesReceived + "B, compression=" + String.format(Locale.ROOT, "%.2f", getCompressionRatio()) + ", errors=" + this.errors + "}";
+    }
+}
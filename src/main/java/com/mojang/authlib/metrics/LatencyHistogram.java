@@ -0,0 +1,74 @@
+package com.mojang.authlib.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with power-of-two microsecond buckets. Recording is a few atomic increments and never
+ * allocates or locks; percentiles are therefore only accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+        this.buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        this.count.incrementAndGet();
+        this.total.addAndGet(micros);
+        long current;
+        while (micros > (current = this.max.get()) && !this.max.compareAndSet(current, micros)) {
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public double getMeanMicros() {
+        long count = this.count.get();
+        return count == 0 ? 0.0D : (double) this.total.get() / count;
+    }
+
+    public long getMaxMicros() {
+        return this.max.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the upper bound, in microseconds, of the bucket holding the given quantile
+     */
+    public long getPercentileMicros(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 0L : (1L << i) - 1, this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0L);
+        }
+        this.count.set(0L);
+        this.total.set(0L);
+        this.max.set(0L);
+    }
+}
@@ -0,0 +1,136 @@
+package com.mojang.authlib.properties;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable list of properties in an array. A profile rarely has more than one or two properties, so lookups
+ * just scan it; compared to a {@link PropertyMap} this saves the multimap's hash tables and entry objects.
+ */
+public final class CompactPropertyMap implements Iterable<Property> {
+    public static final CompactPropertyMap EMPTY = new CompactPropertyMap(new Property[0]);
+    private final Property[] properties;
+
+    private CompactPropertyMap(Property[] properties) {
+        this.properties = properties;
+    }
+
+    public static CompactPropertyMap copyOf(Collection<Property> properties) {
+        if (properties.isEmpty()) {
+            return EMPTY;
+        }
+        return new CompactPropertyMap(properties.toArray(new Property[properties.size()]));
+    }
+
+    public int size() {
+        return this.properties.length;
+    }
+
+    public boolean isEmpty() {
+        return this.properties.length == 0;
+    }
+
+    /**
+     * @return the first property with that name, or null if there is none
+     */
+    public Property getFirst(String name) {
+        for (Property property : this.properties) {
+            if (equal(property.getName(), name)) {
+                return property;
+            }
+        }
+        return null;
+    }
+
+    public List<Property> get(String name) {
+        ImmutableList.Builder<Property> result = ImmutableList.builder();
+        for (Property property : this.properties) {
+            if (equal(property.getName(), name)) {
+                result.add(property);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * Puts every property into the target, sharing the property instances rather than copying them.
+     */
+    public void copyInto(PropertyMap target) {
+        for (Property property : this.properties) {
+            target.put(property.getName(), property);
+        }
+    }
+
+    public Iterator<Property> iterator() {
+        return Iterators.forArray(this.properties);
+    }
+
+    /**
+     * Compares the name, value and signature of each property, in order.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompactPropertyMap)) {
+            return false;
+        }
+        Property[] other = ((CompactPropertyMap) o).properties;
+        if (other.length != this.properties.length) {
+            return false;
+        }
+        for (int i = 0; i < other.length; i++) {
+            if (!sameContent(this.properties[i], other[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (Property property : this.properties) {
+            result = 31 * result + contentHash(property);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (Property property : this.properties) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(property.getName()).append(property.hasSignature() ? " (signed)" : "");
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * {@link Property} has identity equality; this compares what it holds.
+     */
+    public static boolean sameContent(Property a, Property b) {
+        if (a == b) {
+            return true;
+        }
+        return equal(a.getName(), b.getName()) && equal(a.getValue(), b.getValue()) && equal(a.getSignature(), b.getSignature());
+    }
+
+    public static int contentHash(Property property) {
+        int result = property.getName() == null ? 0 : property.getName().hashCode();
+        result = 31 * result + (property.getValue() == null ? 0 : property.getValue().hashCode());
+        result = 31 * result + (property.getSignature() == null ? 0 : property.getSignature().hashCode());
+        return result;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
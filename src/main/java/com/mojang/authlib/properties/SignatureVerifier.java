@@ -0,0 +1,196 @@
+package com.mojang.authlib.properties;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang3.Validate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Verifies property signatures against one public key. Each thread keeps its own {@link Signature} already
+ * initialized with the key, and successfully verified (value, signature) pairs are remembered by digest, so
+ * checking the same textures property again costs a SHA-256 instead of an RSA operation.
+ * <p>
+ * Long-lived users such as the session service should hold their own instance; {@link #forKey(PublicKey)} keeps
+ * only a few recently used keys.
+ */
+public class SignatureVerifier {
+    private static final String ALGORITHM = "SHA1withRSA";
+    private static final long MAX_VERIFIED = 16384L;
+    private static final long MAX_SHARED_KEYS = 16L;
+    // Keyed by encoding, so equal keys loaded separately share a verifier and a dropped key isn't pinned forever.
+    private static final Cache<ByteBuffer, SignatureVerifier> VERIFIERS = CacheBuilder.newBuilder().maximumSize(MAX_SHARED_KEYS).build();
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new Error("SHA-256 is not available", e);
+            }
+        }
+    };
+    private final PublicKey publicKey;
+    private final ThreadLocal<Signature> signatures;
+    private final Cache<Digest, Boolean> verified = CacheBuilder.newBuilder().maximumSize(MAX_VERIFIED).build();
+
+    public SignatureVerifier(final PublicKey publicKey) {
+        Validate.notNull(publicKey);
+        this.publicKey = publicKey;
+        this.signatures = new ThreadLocal<Signature>() {
+            protected Signature initialValue() {
+                try {
+                    Signature signature = Signature.getInstance(ALGORITHM);
+                    signature.initVerify(publicKey);
+                    return signature;
+                } catch (NoSuchAlgorithmException e) {
+                    throw new Error(ALGORITHM + " is not available", e);
+                } catch (InvalidKeyException e) {
+                    throw new IllegalArgumentException("Invalid public key " + publicKey, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return a shared verifier for the given key, or for one with the same encoding
+     */
+    public static SignatureVerifier forKey(final PublicKey publicKey) {
+        Validate.notNull(publicKey);
+        byte[] encoded = publicKey.getEncoded();
+        if (encoded == null) {
+            return new SignatureVerifier(publicKey);
+        }
+        try {
+            return VERIFIERS.get(ByteBuffer.wrap(encoded), new Callable<SignatureVerifier>() {
+                public SignatureVerifier call() {
+                    return new SignatureVerifier(publicKey);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public PublicKey getPublicKey() {
+        return this.publicKey;
+    }
+
+    public boolean verify(Property property) {
+        return property.hasSignature() && verify(property.getValue(), property.getSignature());
+    }
+
+    public boolean verify(String value, String signature) {
+        if (value == null || signature == null) {
+            return false;
+        }
+        Digest digest = Digest.of(value, signature);
+        if (this.verified.getIfPresent(digest) != null) {
+            return true;
+        }
+        Signature verifier = this.signatures.get();
+        boolean valid;
+        try {
+            verifier.update(value.getBytes(StandardCharsets.UTF_8));
+            valid = verifier.verify(Base64.decodeBase64(signature));
+        } catch (SignatureException e) {
+            // The instance may be left mid-operation; start over with a fresh one next time.
+            this.signatures.remove();
+            return false;
+        }
+        if (valid) {
+            this.verified.put(digest, Boolean.TRUE);
+        }
+        return valid;
+    }
+
+    /**
+     * @return true if every property is signed and its signature is valid
+     */
+    public boolean verifyAll(Collection<Property> properties) {
+        for (Property property : properties) {
+            if (!verify(property)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean verifyAll(PropertyMap properties) {
+        return verifyAll(properties.values());
+    }
+
+    /**
+     * Checks the properties in parallel, one task per property on the given executor.
+     *
+     * @return a future that completes with true if every property is signed and its signature is valid
+     */
+    public CompletableFuture<Boolean> verifyAll(Collection<Property> properties, Executor executor) {
+        if (properties.isEmpty()) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        final List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>(properties.size());
+        for (final Property property : properties) {
+            results.add(CompletableFuture.supplyAsync(new Supplier<Boolean>() {
+                public Boolean get() {
+                    return Boolean.valueOf(verify(property));
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).thenApply(new Function<Void, Boolean>() {
+            public Boolean apply(Void ignored) {
+                for (CompletableFuture<Boolean> result : results) {
+                    if (!result.join().booleanValue()) {
+                        return Boolean.FALSE;
+                    }
+                }
+                return Boolean.TRUE;
+            }
+        });
+    }
+
+    private static final class Digest {
+        private final long high;
+        private final long low;
+
+        private Digest(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        static Digest of(String value, String signature) {
+            MessageDigest digest = DIGESTS.get();
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            ByteBuffer hash = ByteBuffer.wrap(digest.digest(signature.getBytes(StandardCharsets.US_ASCII)));
+            return new Digest(hash.getLong(0), hash.getLong(8));
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Digest)) return false;
+            Digest digest = (Digest) o;
+            return this.high == digest.high && this.low == digest.low;
+        }
+
+        public int hashCode() {
+            return (int) (this.high ^ (this.high >>> 32));
+        }
+    }
+}
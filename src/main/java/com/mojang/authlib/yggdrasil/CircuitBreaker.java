@@ -0,0 +1,198 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.exceptions.CircuitOpenException;
+import com.mojang.authlib.exceptions.TooManyRequestsException;
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stops calling an endpoint that keeps failing. After {@code failureThreshold} failures in a row the breaker opens
+ * and requests fail straight away with {@link CircuitOpenException}. Once the backoff has passed, a single probe
+ * request is let through: if it succeeds the breaker closes, otherwise it opens again for longer.
+ * <p>
+ * Backoff uses decorrelated jitter, so clients that saw the same outage don't come back in lockstep.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long baseDelay;
+    private final long maxDelay;
+    private volatile State state = State.CLOSED;
+    private volatile long generation;
+    private volatile int failures;
+    private long delay;
+    private long openUntil;
+    private long probeStarted;
+
+    /**
+     * @param baseDelay shortest time the breaker stays open, in milliseconds
+     * @param maxDelay  longest time the breaker stays open, in milliseconds
+     */
+    public CircuitBreaker(String name, int failureThreshold, long baseDelay, long maxDelay) {
+        Validate.isTrue(failureThreshold > 0, "failureThreshold must be positive");
+        Validate.isTrue(baseDelay > 0 && maxDelay >= baseDelay, "Expected 0 < baseDelay <= maxDelay");
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return the next delay after {@code previous}, drawn uniformly between {@code base} and three times the
+     * previous delay and capped at {@code cap}
+     */
+    public static long nextDelay(long base, long cap, long previous) {
+        long upper = Math.max(base, previous) * 3;
+        return Math.min(cap, base + ThreadLocalRandom.current().nextLong(Math.max(1L, upper - base)));
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * Like {@link #acquire()}, but without claiming the probe: only checks whether a request would currently be
+     * let through.
+     */
+    public void check() throws CircuitOpenException {
+        if (this.state == State.CLOSED) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (!permits(now)) {
+                throw rejection(now);
+            }
+        }
+    }
+
+    /**
+     * Claims permission for one request. Every successful call must be followed by {@link #onSuccess(long)} or
+     * {@link #onFailure(long)} with the permit it returned.
+     *
+     * @return the permit, which ties the outcome of the request to the state it was let through in
+     * @throws CircuitOpenException if the breaker is open, or half open with a probe already in flight
+     */
+    public long acquire() throws CircuitOpenException {
+        // Generation before state, the reverse of the order transitions write them in.
+        long generation = this.generation;
+        if (this.state == State.CLOSED) {
+            return generation;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (this.state == State.CLOSED) {
+                return this.generation;
+            }
+            if (!permits(now)) {
+                throw rejection(now);
+            }
+            transition(State.HALF_OPEN);
+            this.probeStarted = now;
+            return this.generation;
+        }
+    }
+
+    /**
+     * Outcomes only count for requests let through since the last transition, so a request admitted while closed
+     * that succeeds while a probe is out can't close the breaker, and one that fails after it opened can't keep
+     * it open for longer.
+     */
+    public void onSuccess(long permit) {
+        if (permit != this.generation || (this.state == State.CLOSED && this.failures == 0)) {
+            return;
+        }
+        synchronized (this) {
+            if (permit != this.generation) {
+                return;
+            }
+            if (this.state != State.CLOSED) {
+                transition(State.CLOSED);
+            }
+            this.failures = 0;
+            this.delay = 0L;
+        }
+    }
+
+    public synchronized void onFailure(long permit) {
+        if (permit != this.generation) {
+            return;
+        }
+        this.failures++;
+        if (this.state == State.HALF_OPEN || this.failures >= this.failureThreshold) {
+            this.delay = nextDelay(this.baseDelay, this.maxDelay, this.delay);
+            this.openUntil = System.currentTimeMillis() + this.delay;
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * Records the outcome of a permitted request. Only {@link AuthenticationUnavailableException}s mean the
+     * endpoint is in trouble; rejected credentials and the like are normal answers. Being rate limited says
+     * neither, as the server is up and the caller is already told when to come back, so it is not counted at all.
+     */
+    public void record(long permit, Throwable error) {
+        if (error instanceof TooManyRequestsException) {
+            onRateLimited(permit, ((TooManyRequestsException) error).getRetryAfter());
+            return;
+        }
+        if (error instanceof AuthenticationUnavailableException && !(error instanceof CircuitOpenException)) {
+            onFailure(permit);
+        } else {
+            onSuccess(permit);
+        }
+    }
+
+    /**
+     * Only matters for the probe: it hands the next attempt to whichever request comes after the server's
+     * {@code retryAfter}, rather than leaving the breaker half open until the probe is given up on.
+     */
+    public synchronized void onRateLimited(long permit, long retryAfter) {
+        if (permit != this.generation || this.state != State.HALF_OPEN) {
+            return;
+        }
+        this.openUntil = System.currentTimeMillis() + (retryAfter > 0 ? retryAfter : this.baseDelay);
+        transition(State.OPEN);
+    }
+
+    public synchronized void reset() {
+        transition(State.CLOSED);
+        this.failures = 0;
+        this.delay = 0L;
+    }
+
+    /**
+     * Must hold the lock. Permits handed out before this point no longer count.
+     */
+    private void transition(State state) {
+        this.state = state;
+        this.generation++;
+    }
+
+    private boolean permits(long now) {
+        if (this.state == State.HALF_OPEN) {
+            // A probe that never reported back must not keep the breaker half open forever.
+            return now - this.probeStarted > this.maxDelay;
+        }
+        return this.state == State.CLOSED || now >= this.openUntil;
+    }
+
+    private CircuitOpenException rejection(long now) {
+        long retryAfter = Math.max(0L, this.openUntil - now);
+        return new CircuitOpenException("Circuit for " + this.name + " is open, retry in " + retryAfter + " ms", retryAfter);
+    }
+
+    public String toString() {
+        return "CircuitBreaker{" + this.name + ", " + this.state + "}";
+    }
+}
@@ -0,0 +1,157 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.Validate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides whether a texture URL points at an allowed host. Entries are matched by whole labels: {@code "localhost"}
+ * allows exactly that host, while {@code ".minecraft.net"} allows any subdomain of minecraft.net.
+ * <p>
+ * The entries are compiled into a trie of reversed labels, and the decision for every host seen is remembered.
+ * Instances are immutable; swap in a new one to change the whitelist.
+ */
+public class DomainWhitelist {
+    private static final long MAX_CACHED_HOSTS = 1024L;
+    private final List<String> domains;
+    private final Node root = new Node();
+    private final Cache<String, Boolean> decisions = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_HOSTS).build();
+
+    public DomainWhitelist(String... domains) {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (String domain : domains) {
+            Validate.notEmpty(domain, "Whitelisted domain must not be empty");
+            String normalized = domain.toLowerCase(Locale.ROOT);
+            boolean subdomains = normalized.charAt(0) == '.';
+            Node node = this.root;
+            int end = normalized.length();
+            int start = subdomains ? 1 : 0;
+            Validate.isTrue(end > start, "Whitelisted domain must have at least one label");
+            while (end > start) {
+                int dot = normalized.lastIndexOf('.', end - 1);
+                int labelStart = Math.max(dot + 1, start);
+                node = node.child(normalized.substring(labelStart, end));
+                end = labelStart - 1;
+            }
+            if (subdomains) {
+                node.subdomains = true;
+            } else {
+                node.exact = true;
+            }
+            builder.add(normalized);
+        }
+        this.domains = builder.build();
+    }
+
+    public List<String> getDomains() {
+        return this.domains;
+    }
+
+    /**
+     * @return whether the host of the given URL is whitelisted; false for null or malformed URLs
+     */
+    public boolean isWhitelisted(String url) {
+        String host = getHost(url);
+        if (host == null) {
+            return false;
+        }
+        Boolean decision = this.decisions.getIfPresent(host);
+        if (decision == null) {
+            decision = Boolean.valueOf(matches(host));
+            this.decisions.put(host, decision);
+        }
+        return decision.booleanValue();
+    }
+
+    private boolean matches(String host) {
+        Node node = this.root;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            String label = host.substring(dot + 1, end);
+            if (label.isEmpty()) {
+                return false;
+            }
+            node = node.children.get(label);
+            if (node == null) {
+                return false;
+            }
+            if (dot < 0) {
+                return node.exact;
+            }
+            if (node.subdomains) {
+                return true;
+            }
+            end = dot;
+        }
+        return false;
+    }
+
+    /**
+     * Pulls the lower-cased host out of an absolute URL without parsing the rest of it.
+     */
+    static String getHost(String url) {
+        if (url == null) {
+            return null;
+        }
+        int scheme = url.indexOf("://");
+        if (scheme <= 0) {
+            return null;
+        }
+        int start = scheme + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        if (start < end && url.charAt(start) == '[') {
+            // IPv6 literals never match a domain entry
+            return null;
+        }
+        int colon = url.indexOf(':', start);
+        if (colon >= 0 && colon < end) {
+            end = colon;
+        }
+        if (end > start && url.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end <= start) {
+            return null;
+        }
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '.' || c == '_')) {
+                return null;
+            }
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        private boolean exact;
+        private boolean subdomains;
+
+        Node child(String label) {
+            Node node = this.children.get(label);
+            if (node == null) {
+                node = new Node();
+                this.children.put(label, node);
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.util.HostsHandler;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Holds the current {@link YggdrasilEndpoints}. When backed by a properties file, the file is read once up front
+ * and then only again when {@link #watch()} sees it change, so requests just read a volatile field.
+ * <p>
+ * A file that fails to load leaves the previous endpoints in place.
+ */
+public class EndpointConfiguration implements Closeable {
+    /**
+     * System property naming a properties file that {@link #createDefault()} and {@link #getDefault()} load and
+     * watch.
+     */
+    public static final String FILE_PROPERTY = "authlib.endpoints";
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final File file;
+    private volatile YggdrasilEndpoints endpoints;
+    private WatchService watchService;
+
+    public EndpointConfiguration(YggdrasilEndpoints endpoints) {
+        Validate.notNull(endpoints);
+        this.file = null;
+        this.endpoints = endpoints;
+    }
+
+    private EndpointConfiguration(File file, YggdrasilEndpoints endpoints) {
+        this.file = file;
+        this.endpoints = endpoints;
+    }
+
+    /**
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if it names an invalid URL
+     */
+    public static EndpointConfiguration load(File file) throws IOException {
+        return new EndpointConfiguration(file.getAbsoluteFile(), read(file));
+    }
+
+    /**
+     * @return the file named by {@link #FILE_PROPERTY}, watched for changes, or the built-in defaults if the
+     * property is not set or the file can't be loaded
+     */
+    public static EndpointConfiguration createDefault() {
+        String fileName = System.getProperty(FILE_PROPERTY);
+        if (fileName != null) {
+            try {
+                EndpointConfiguration configuration = load(new File(fileName));
+                configuration.watch();
+                return configuration;
+            } catch (IOException e) {
+                LOGGER.warn("Couldn't load endpoints from " + fileName + ", using defaults", e);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Couldn't load endpoints from " + fileName + ", using defaults", e);
+            }
+        }
+        return new EndpointConfiguration(YggdrasilEndpoints.DEFAULT);
+    }
+
+    /**
+     * @return the configuration shared by every service that hasn't been given its own, created by
+     * {@link #createDefault()} on first use. It is watched for the life of the JVM, so don't close it.
+     */
+    public static EndpointConfiguration getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public YggdrasilEndpoints get() {
+        return this.endpoints;
+    }
+
+    public void set(YggdrasilEndpoints endpoints) {
+        Validate.notNull(endpoints);
+        this.endpoints = endpoints;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Reads the file again.
+     *
+     * @return whether the endpoints changed
+     */
+    public boolean reload() {
+        if (this.file == null) {
+            return false;
+        }
+        YggdrasilEndpoints loaded;
+        try {
+            loaded = read(this.file);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't reload endpoints from " + this.file + ", keeping " + this.endpoints, e);
+            return false;
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Couldn't reload endpoints from " + this.file + ", keeping " + this.endpoints, e);
+            return false;
+        }
+        if (loaded.equals(this.endpoints)) {
+            return false;
+        }
+        LOGGER.info("Endpoints changed to {}", new Object[]{loaded});
+        this.endpoints = loaded;
+        return true;
+    }
+
+    /**
+     * Starts a daemon thread that reloads the file whenever it is written. Does nothing if already watching or if
+     * there is no file.
+     */
+    public synchronized void watch() throws IOException {
+        if (this.file == null || this.watchService != null) {
+            return;
+        }
+        final WatchService watchService = FileSystems.getDefault().newWatchService();
+        final Path directory = this.file.getParentFile().toPath();
+        final Path fileName = this.file.toPath().getFileName();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchService = watchService;
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        WatchKey key = watchService.take();
+                        boolean changed = false;
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            // Editors often replace the file rather than write to it, so creation counts too.
+                            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+                        }
+                        if (changed) {
+                            reload();
+                        }
+                        if (!key.reset()) {
+                            LOGGER.warn("Stopped watching {}, the directory is gone", new Object[]{directory});
+                            return;
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                } catch (ClosedWatchServiceException ignored) {
+                }
+            }
+        }, "Authlib Endpoint Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching the file. The current endpoints stay in effect.
+     */
+    public synchronized void close() {
+        IOUtils.closeQuietly(this.watchService);
+        this.watchService = null;
+    }
+
+    private static YggdrasilEndpoints read(File file) throws IOException {
+        return YggdrasilEndpoints.fromProperties(HostsHandler.getProperties(file.getPath()));
+    }
+
+    private static final class DefaultHolder {
+        private static final EndpointConfiguration INSTANCE = createDefault();
+    }
+}
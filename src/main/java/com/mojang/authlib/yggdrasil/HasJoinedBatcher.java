@@ -0,0 +1,184 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.exceptions.AuthenticationException;
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.exceptions.MalformedResponseException;
+import com.mojang.authlib.exceptions.UnexpectedStatusException;
+import com.mojang.authlib.yggdrasil.request.HasJoinedBatchRequest;
+import com.mojang.authlib.yggdrasil.response.HasJoinedBatchResponse;
+import com.mojang.authlib.yggdrasil.response.HasJoinedMinecraftServerResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Gathers hasJoined checks for up to {@code window} milliseconds, or until {@code maxBatchSize} are waiting, and
+ * sends them to the bulk endpoint in one request. If the server can't be reached every check in the batch fails with
+ * that error, rather than each being sent again to a server that is already in trouble. If the server doesn't look
+ * like it has a bulk endpoint at all, every check goes out on its own for a while before the bulk endpoint is tried
+ * again.
+ */
+final class HasJoinedBatcher {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long UNSUPPORTED_RECHECK = TimeUnit.MINUTES.toMillis(10L);
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Authlib hasJoined Batch #%d").setDaemon(true).build());
+    private final YggdrasilMinecraftSessionService sessionService;
+    private final int maxBatchSize;
+    private final long window;
+    private final Object lock = new Object();
+    private List<Check> pending = new ArrayList<Check>();
+    private long generation;
+    private volatile long unsupportedUntil;
+
+    HasJoinedBatcher(YggdrasilMinecraftSessionService sessionService, int maxBatchSize, long window) {
+        this.sessionService = sessionService;
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+    }
+
+    CompletableFuture<GameProfile> submit(GameProfile user, String serverId) {
+        Executor executor = this.sessionService.getAuthenticationService().getExecutor();
+        if (System.currentTimeMillis() < this.unsupportedUntil) {
+            return this.sessionService.hasJoinedServer(user, serverId, executor);
+        }
+        Check check = new Check(user, serverId);
+        List<Check> full = null;
+        long scheduleFor = -1L;
+        synchronized (this.lock) {
+            this.pending.add(check);
+            if (this.pending.size() >= this.maxBatchSize) {
+                full = take();
+            } else if (this.pending.size() == 1) {
+                scheduleFor = this.generation;
+            }
+        }
+        if (full != null) {
+            send(full, executor);
+        } else if (scheduleFor >= 0) {
+            final long batch = scheduleFor;
+            FLUSH_SCHEDULER.schedule(new Runnable() {
+                public void run() {
+                    flush(batch);
+                }
+            }, this.window, TimeUnit.MILLISECONDS);
+        }
+        return check.result;
+    }
+
+    /**
+     * Sends the batch that was open when the flush was scheduled, unless it already went out for being full.
+     */
+    private void flush(long batch) {
+        List<Check> checks;
+        synchronized (this.lock) {
+            if (this.generation != batch || this.pending.isEmpty()) {
+                return;
+            }
+            checks = take();
+        }
+        send(checks, this.sessionService.getAuthenticationService().getExecutor());
+    }
+
+    private List<Check> take() {
+        List<Check> checks = this.pending;
+        this.pending = new ArrayList<Check>();
+        this.generation++;
+        return checks;
+    }
+
+    private void send(final List<Check> checks, final Executor executor) {
+        if (checks.size() == 1 || System.currentTimeMillis() < this.unsupportedUntil) {
+            sendEach(checks, executor);
+            return;
+        }
+        HasJoinedBatchRequest.Check[] request = new HasJoinedBatchRequest.Check[checks.size()];
+        for (int i = 0; i < request.length; i++) {
+            request[i] = new HasJoinedBatchRequest.Check(checks.get(i).user.getName(), checks.get(i).serverId);
+        }
+        YggdrasilAuthenticationService authenticationService = this.sessionService.getAuthenticationService();
+        authenticationService.makeRequestAsync(authenticationService.getEndpoints().getHasJoinedBatchUrl(), new HasJoinedBatchRequest(request), HasJoinedBatchResponse.class, executor).whenComplete(new BiConsumer<HasJoinedBatchResponse, Throwable>() {
+            public void accept(HasJoinedBatchResponse response, Throwable error) {
+                if (error != null) {
+                    Throwable cause = YggdrasilAuthenticationService.unwrap(error);
+                    if (isUnsupported(cause)) {
+                        markUnsupported(cause.toString());
+                        sendEach(checks, executor);
+                        return;
+                    }
+                    LOGGER.debug("Bulk hasJoined check of " + checks.size() + " players failed", cause);
+                    for (Check check : checks) {
+                        check.result.completeExceptionally(cause);
+                    }
+                    return;
+                }
+                HasJoinedMinecraftServerResponse[] results = response == null ? null : response.getResults();
+                if (results == null || results.length != checks.size()) {
+                    markUnsupported(results == null ? "no results" : results.length + " results for " + checks.size() + " checks");
+                    sendEach(checks, executor);
+                    return;
+                }
+                for (int i = 0; i < results.length; i++) {
+                    Check check = checks.get(i);
+                    check.result.complete(sessionService.joinedProfile(check.user, results[i]));
+                }
+            }
+        });
+    }
+
+    private void sendEach(List<Check> checks, Executor executor) {
+        for (final Check check : checks) {
+            this.sessionService.hasJoinedServer(check.user, check.serverId, executor).whenComplete(new BiConsumer<GameProfile, Throwable>() {
+                public void accept(GameProfile profile, Throwable error) {
+                    if (error != null) {
+                        check.result.completeExceptionally(error);
+                    } else {
+                        check.result.complete(profile);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * An outage is worth retrying in bulk; a body that isn't a batch response, or a client error, means the server
+     * has no such endpoint.
+     */
+    private static boolean isUnsupported(Throwable cause) {
+        if (cause instanceof MalformedResponseException) {
+            return true;
+        }
+        if (cause instanceof UnexpectedStatusException) {
+            int status = ((UnexpectedStatusException) cause).getStatusCode();
+            return status >= 400 && status < 500;
+        }
+        return (cause instanceof AuthenticationException) && !(cause instanceof AuthenticationUnavailableException);
+    }
+
+    private void markUnsupported(String reason) {
+        if (System.currentTimeMillis() >= this.unsupportedUntil) {
+            LOGGER.info("Bulk hasJoined endpoint unavailable ({}), checking players one by one for the next {} minutes", new Object[]{reason, Long.valueOf(TimeUnit.MILLISECONDS.toMinutes(UNSUPPORTED_RECHECK))});
+        }
+        this.unsupportedUntil = System.currentTimeMillis() + UNSUPPORTED_RECHECK;
+    }
+
+    private static final class Check {
+        private final GameProfile user;
+        private final String serverId;
+        private final CompletableFuture<GameProfile> result = new CompletableFuture<GameProfile>();
+
+        private Check(GameProfile user, String serverId) {
+            this.user = user;
+            this.serverId = serverId;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.Property;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Disk-backed store of filled profiles, used as a second tier behind the in-memory profile cache so a restart does
+ * not refetch every player's properties.
+ * <p>
+ * The file is append-only: each write adds a checksummed record and the newest record for a UUID wins. Reads go
+ * through a memory mapping of the file, and the index of UUID to record offset is built lazily on first use.
+ * Several JVMs on the same host may share one file; appends and compaction take an exclusive {@link FileLock},
+ * and readers pick up records written by other processes whenever they miss. Within one JVM, use a single
+ * instance per file.
+ * <p>
+ * The file never shrinks in place, which keeps existing mappings valid. Compaction writes the live records into
+ * a new file, renames it over the old one and flags the old file as superseded so other processes reopen it.
+ */
+public class PersistentProfileCache implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D435046;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SUPERSEDED_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final long COMPACT_MIN_SIZE = 1L << 20;
+    private static final long COMPACT_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    private final File file;
+    private final long maxAge;
+    private final ScheduledExecutorService compactor;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private final Map<UUID, Long> index = new HashMap<UUID, Long>();
+    private long indexedUpTo;
+    private int deadRecords;
+    private boolean closed;
+
+    /**
+     * @param maxAge how long a record stays valid after it was written, in milliseconds
+     */
+    public PersistentProfileCache(File file, long maxAge) {
+        Validate.notNull(file);
+        this.file = file;
+        this.maxAge = maxAge;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Authlib Profile Cache Compactor").setDaemon(true).build());
+        this.compactor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    compactIfNeeded();
+                } catch (IOException e) {
+                    LOGGER.warn("Couldn't compact profile cache " + PersistentProfileCache.this.file, e);
+                }
+            }
+        }, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the stored profile, or null if there is none or it is older than the maximum age
+     */
+    public synchronized GameProfile get(UUID id) throws IOException {
+        ensureOpen();
+        Long offset = this.index.get(id);
+        if (offset == null) {
+            catchUp();
+            offset = this.index.get(id);
+            if (offset == null) {
+                return null;
+            }
+        }
+        ByteBuffer buffer = this.mapped.duplicate();
+        long offsetValue = offset.longValue();
+        int length = buffer.getInt((int) offsetValue);
+        long writtenAt = buffer.getLong((int) offsetValue + 8);
+        if (System.currentTimeMillis() - writtenAt > this.maxAge) {
+            return null;
+        }
+        buffer.position((int) offsetValue + RECORD_HEADER_SIZE);
+        buffer.limit((int) offsetValue + RECORD_HEADER_SIZE + length);
+        return readProfile(id, buffer.slice());
+    }
+
+    public synchronized void put(GameProfile profile) throws IOException {
+        Validate.notNull(profile.getId());
+        byte[] payload = writeProfile(profile);
+        Validate.isTrue(payload.length <= MAX_RECORD_SIZE, "Profile is too large to store");
+        ensureOpen();
+        FileLock lock = lockCurrentFile();
+        try {
+            catchUp();
+            repairTail();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            record.putInt(payload.length);
+            record.putInt((int) crc.getValue());
+            record.putLong(System.currentTimeMillis());
+            record.putLong(profile.getId().getMostSignificantBits());
+            record.putLong(profile.getId().getLeastSignificantBits());
+            record.put(payload);
+            record.flip();
+            long position = this.indexedUpTo;
+            while (record.hasRemaining()) {
+                position += this.channel.write(record, position);
+            }
+            catchUp();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Rewrites the file without superseded and expired records if enough of it is dead weight.
+     */
+    public synchronized void compactIfNeeded() throws IOException {
+        if (this.closed || this.channel == null) {
+            return;
+        }
+        catchUp();
+        long now = System.currentTimeMillis();
+        for (Iterator<Long> offsets = this.index.values().iterator(); offsets.hasNext(); ) {
+            if (now - this.mapped.getLong((int) offsets.next().longValue() + 8) > this.maxAge) {
+                // Expired records are dead weight too; compaction would drop them anyway.
+                offsets.remove();
+                this.deadRecords++;
+            }
+        }
+        if (this.indexedUpTo >= COMPACT_MIN_SIZE && this.deadRecords > this.index.size()) {
+            compact();
+        }
+    }
+
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        FileLock lock = lockCurrentFile();
+        try {
+            catchUp();
+            File temp = new File(this.file.getPath() + ".compact");
+            long now = System.currentTimeMillis();
+            int kept = 0;
+            RandomAccessFile out = new RandomAccessFile(temp, "rw");
+            try {
+                out.setLength(0);
+                FileChannel target = out.getChannel();
+                target.write(header(), 0);
+                long position = HEADER_SIZE;
+                for (Long offset : this.index.values()) {
+                    int start = (int) offset.longValue();
+                    int length = this.mapped.getInt(start);
+                    if (now - this.mapped.getLong(start + 8) > this.maxAge) {
+                        continue;
+                    }
+                    ByteBuffer record = this.mapped.duplicate();
+                    record.position(start);
+                    record.limit(start + RECORD_HEADER_SIZE + length);
+                    while (record.hasRemaining()) {
+                        position += target.write(record, position);
+                    }
+                    kept++;
+                }
+                target.force(true);
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            ByteBuffer flag = ByteBuffer.allocate(4);
+            flag.putInt(0, 1);
+            this.channel.write(flag, SUPERSEDED_OFFSET);
+            this.channel.force(false);
+            LOGGER.debug("Compacted profile cache {} to {} records", new Object[]{this.file, Integer.valueOf(kept)});
+        } finally {
+            lock.release();
+        }
+        reopen();
+    }
+
+    public synchronized void close() throws IOException {
+        this.closed = true;
+        this.compactor.shutdownNow();
+        closeFile();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Profile cache has been closed");
+        }
+        if (this.channel == null) {
+            open();
+        } else if (isSuperseded()) {
+            reopen();
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = this.file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create directory " + parent);
+        }
+        this.raf = new RandomAccessFile(this.file, "rw");
+        this.channel = this.raf.getChannel();
+        FileLock lock = this.channel.lock();
+        try {
+            if (this.channel.size() < HEADER_SIZE) {
+                this.channel.write(header(), 0);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                this.channel.read(header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException(this.file + " is not a profile cache of a supported version");
+                }
+            }
+        } catch (IOException e) {
+            lock.release();
+            closeFile();
+            throw e;
+        }
+        lock.release();
+        this.index.clear();
+        this.indexedUpTo = HEADER_SIZE;
+        this.deadRecords = 0;
+        this.mapped = null;
+        catchUp();
+        LOGGER.debug("Opened profile cache {} with {} records", new Object[]{this.file, Integer.valueOf(this.index.size())});
+    }
+
+    private void reopen() throws IOException {
+        closeFile();
+        open();
+    }
+
+    private void closeFile() throws IOException {
+        this.mapped = null;
+        this.channel = null;
+        if (this.raf != null) {
+            RandomAccessFile raf = this.raf;
+            this.raf = null;
+            raf.close();
+        }
+    }
+
+    private boolean isSuperseded() throws IOException {
+        ByteBuffer flag = ByteBuffer.allocate(4);
+        this.channel.read(flag, SUPERSEDED_OFFSET);
+        return flag.getInt(0) != 0;
+    }
+
+    private FileLock lockCurrentFile() throws IOException {
+        while (true) {
+            FileLock lock = this.channel.lock();
+            if (!isSuperseded()) {
+                return lock;
+            }
+            lock.release();
+            reopen();
+        }
+    }
+
+    /**
+     * Indexes any complete records appended since the last scan, including ones written by other processes. Stops
+     * at the first record that is incomplete or fails its checksum.
+     */
+    private void catchUp() throws IOException {
+        long size = this.channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(this.file + " is too large");
+        }
+        if (this.mapped == null || this.mapped.capacity() < size) {
+            this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int position = (int) this.indexedUpTo;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int length = this.mapped.getInt(position);
+            if (length < 0 || length > MAX_RECORD_SIZE || position + RECORD_HEADER_SIZE + (long) length > size) {
+                break;
+            }
+            ByteBuffer payload = this.mapped.duplicate();
+            payload.position(position + RECORD_HEADER_SIZE);
+            payload.limit(position + RECORD_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != this.mapped.getInt(position + 4)) {
+                break;
+            }
+            UUID id = new UUID(this.mapped.getLong(position + 16), this.mapped.getLong(position + 24));
+            if (id.getMostSignificantBits() == 0L && id.getLeastSignificantBits() == 0L) {
+                this.deadRecords++;
+            } else if (this.index.put(id, Long.valueOf(position)) != null) {
+                this.deadRecords++;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        this.indexedUpTo = position;
+    }
+
+    /**
+     * A process that died mid-append leaves a broken record at the end of the file. It is covered with a padding
+     * record, which belongs to the nil UUID and is skipped on read, rather than truncated, so that no process
+     * ever sees the file shrink under its mapping. Must hold the file lock.
+     */
+    private void repairTail() throws IOException {
+        long size = this.channel.size();
+        if (this.indexedUpTo == size) {
+            return;
+        }
+        long length = size - this.indexedUpTo - RECORD_HEADER_SIZE;
+        if (length < 0) {
+            this.channel.write(ByteBuffer.allocate((int) -length), size);
+            length = 0;
+        }
+        while (length > MAX_RECORD_SIZE) {
+            writePadding(this.indexedUpTo, MAX_RECORD_SIZE);
+            catchUp();
+            length = size - this.indexedUpTo - RECORD_HEADER_SIZE;
+        }
+        writePadding(this.indexedUpTo, (int) length);
+        LOGGER.warn("Repaired incomplete record at the end of profile cache {}", new Object[]{this.file});
+        catchUp();
+    }
+
+    private void writePadding(long position, int length) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        this.channel.read(payload, position + RECORD_HEADER_SIZE);
+        payload.clear();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        // The whole header is rewritten, as the broken record's timestamp and UUID are still behind it.
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(length);
+        header.putInt((int) crc.getValue());
+        header.putLong(0L);
+        header.putLong(0L);
+        header.putLong(0L);
+        header.flip();
+        this.channel.write(header, position);
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(0);
+        header.putInt(0);
+        header.flip();
+        return header;
+    }
+
+    private static byte[] writeProfile(GameProfile profile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, profile.getName());
+        out.writeInt(profile.getProperties().size());
+        for (Property property : profile.getProperties().values()) {
+            writeString(out, property.getName());
+            writeString(out, property.getValue());
+            writeString(out, property.getSignature());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static GameProfile readProfile(UUID id, ByteBuffer in) {
+        GameProfile profile = new GameProfile(id, readString(in));
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            String value = readString(in);
+            String signature = readString(in);
+            profile.getProperties().put(name, new Property(name, value, signature));
+        }
+        return profile;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.CompactPropertyMap;
+import com.mojang.authlib.properties.Property;
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonical profiles by UUID. Registering a profile returns the snapshot already held for it if nothing changed,
+ * and properties are interned by content, so the large base64 textures of a player are held once however many
+ * lookups, caches and plugins end up with a profile for them.
+ * <p>
+ * Interned properties are weakly held: they live as long as some profile still holds them.
+ */
+public class ProfileRegistry {
+    private final ConcurrentMap<PropertyKey, Property> properties = new MapMaker().weakValues().makeMap();
+    private final Cache<UUID, ProfileSnapshot> profiles;
+
+    /**
+     * @param expireAfterAccess milliseconds a snapshot is kept after it was last registered or looked up
+     */
+    public ProfileRegistry(long maximumSize, long expireAfterAccess) {
+        this.profiles = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterAccess(expireAfterAccess, TimeUnit.MILLISECONDS).recordStats().build();
+    }
+
+    /**
+     * @return the interned property with the same name, value and signature
+     */
+    public Property intern(Property property) {
+        PropertyKey key = new PropertyKey(property);
+        Property existing = this.properties.putIfAbsent(key, property);
+        return existing == null ? property : existing;
+    }
+
+    /**
+     * Records the current state of a profile.
+     *
+     * @return the snapshot held for the profile, replaced if its name or properties changed
+     */
+    public ProfileSnapshot register(UUID id, String name, Collection<Property> properties) {
+        Validate.notNull(id);
+        List<Property> interned = new ArrayList<Property>(properties.size());
+        for (Property property : properties) {
+            interned.add(intern(property));
+        }
+        CompactPropertyMap compact = CompactPropertyMap.copyOf(interned);
+        ProfileSnapshot existing = this.profiles.getIfPresent(id);
+        if (existing != null && existing.matches(name, compact)) {
+            return existing;
+        }
+        ProfileSnapshot snapshot = new ProfileSnapshot(id, name, compact);
+        this.profiles.put(id, snapshot);
+        return snapshot;
+    }
+
+    public ProfileSnapshot register(GameProfile profile) {
+        return register(profile.getId(), profile.getName(), profile.getProperties().values());
+    }
+
+    /**
+     * @return the snapshot held for the profile, or null if there is none
+     */
+    public ProfileSnapshot get(UUID id) {
+        return this.profiles.getIfPresent(id);
+    }
+
+    public void invalidate(UUID id) {
+        this.profiles.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        this.profiles.invalidateAll();
+    }
+
+    public int getInternedPropertyCount() {
+        return this.properties.size();
+    }
+
+    Cache<UUID, ProfileSnapshot> getCache() {
+        return this.profiles;
+    }
+
+    /**
+     * Holds the strings rather than the property, which would keep every interned property strongly reachable.
+     */
+    private static final class PropertyKey {
+        private final String name;
+        private final String value;
+        private final String signature;
+        private final int hash;
+
+        private PropertyKey(Property property) {
+            this.name = property.getName();
+            this.value = property.getValue();
+            this.signature = property.getSignature();
+            this.hash = CompactPropertyMap.contentHash(property);
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PropertyKey)) return false;
+            PropertyKey that = (PropertyKey) o;
+            return this.hash == that.hash && equal(this.value, that.value) && equal(this.name, that.name) && equal(this.signature, that.signature);
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.CompactPropertyMap;
+
+import java.util.UUID;
+
+/**
+ * An immutable copy of a {@link GameProfile} as handed out by a {@link ProfileRegistry}. Snapshots of the same
+ * profile share one instance, and their properties are the registry's interned instances.
+ */
+public final class ProfileSnapshot {
+    private final UUID id;
+    private final String name;
+    private final CompactPropertyMap properties;
+
+    ProfileSnapshot(UUID id, String name, CompactPropertyMap properties) {
+        this.id = id;
+        this.name = name;
+        this.properties = properties;
+    }
+
+    public UUID getId() {
+        return this.id;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public CompactPropertyMap getProperties() {
+        return this.properties;
+    }
+
+    /**
+     * @return a new, mutable profile holding the shared property instances
+     */
+    public GameProfile toGameProfile() {
+        GameProfile profile = new GameProfile(this.id, this.name);
+        this.properties.copyInto(profile.getProperties());
+        return profile;
+    }
+
+    boolean matches(String name, CompactPropertyMap properties) {
+        return (this.name == null ? name == null : this.name.equals(name)) && this.properties.equals(properties);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProfileSnapshot that = (ProfileSnapshot) o;
+        return this.id.equals(that.id) && matches(that.name, that.properties);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = this.id.hashCode();
+        result = 31 * result + (this.name == null ? 0 : this.name.hashCode());
+        result = 31 * result + this.properties.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ProfileSnapshot{id=" + this.id + ", name=" + this.name + ", properties=" + this.properties + '}';
+    }
+}
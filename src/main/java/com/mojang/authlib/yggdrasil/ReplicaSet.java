@@ -0,0 +1,287 @@
+package com.mojang.authlib.yggdrasil;
+
+import org.apache.commons.lang3.Validate;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A server and its replicas. Requests go to the replica with the lowest moving average response time, weighted by
+ * how many requests it already has in flight. A replica with no measurements, because it is new or just back from
+ * ejection, is tried first but by a single probe at a time; until that answers, further requests only go to it if
+ * no measured replica is left, and then by how many requests each has in flight.
+ * <p>
+ * Health is checked passively: a replica that fails {@code failureThreshold} of its last {@link #FAILURE_WINDOW}
+ * requests, or of as many as the threshold if that is more, with an
+ * {@link com.mojang.authlib.exceptions.AuthenticationUnavailableException} is ejected for a jittered backoff,
+ * after which it gets a single request to prove itself. Failures don't count as response times, as a replica that
+ * fails fast would otherwise look like the quickest; each makes its average worse instead.
+ */
+class ReplicaSet {
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final int FAILURE_WINDOW = 20;
+    /**
+     * A failure counts as an attempt taking this many times the replica's average.
+     */
+    private static final double FAILURE_PENALTY = 2.0;
+    private static final int LATENCY_WINDOW = 256;
+    private static final int LATENCY_RECOMPUTE_INTERVAL = 32;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private final URL primary;
+    private final Replica[] replicas;
+    private final int failureThreshold;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+
+    /**
+     * @param bases     the bases requests can go to, the first being the one URLs are built against
+     * @param baseDelay shortest ejection, in milliseconds
+     * @param maxDelay  longest ejection, in milliseconds
+     */
+    ReplicaSet(List<URL> bases, int failureThreshold, long baseDelay, long maxDelay) {
+        Validate.notEmpty(bases);
+        Validate.isTrue(failureThreshold > 0, "failureThreshold must be positive");
+        Validate.isTrue(baseDelay > 0 && maxDelay >= baseDelay, "Expected 0 < baseDelay <= maxDelay");
+        this.primary = bases.get(0);
+        this.failureThreshold = failureThreshold;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.replicas = new Replica[bases.size()];
+        for (int i = 0; i < this.replicas.length; i++) {
+            this.replicas[i] = new Replica(bases.get(i));
+        }
+    }
+
+    /**
+     * @return whether the URL was built against the primary base
+     */
+    boolean covers(URL url) {
+        return url.getProtocol().equals(this.primary.getProtocol()) && url.getHost().equalsIgnoreCase(this.primary.getHost()) && url.getPort() == this.primary.getPort() && url.getPath().startsWith(this.primary.getPath());
+    }
+
+    /**
+     * @return the URL moved from the primary base onto the replica's
+     */
+    URL route(URL url, Replica replica) {
+        if (replica.base == this.primary) {
+            return url;
+        }
+        String rest = url.getFile().substring(this.primary.getPath().length());
+        try {
+            return new URL(replica.base.getProtocol(), replica.base.getHost(), replica.base.getPort(), replica.base.getPath() + rest);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Cannot move " + url + " onto " + replica.base, e);
+        }
+    }
+
+    /**
+     * Picks the replica for the next attempt. A first attempt goes to an ejected replica only if every replica is
+     * ejected, and then to the one coming back soonest; a second attempt never does.
+     *
+     * @param exclude the replica that already has the request, or null for a first attempt
+     * @return the replica, or null if there is none left for a second attempt
+     */
+    Replica select(Replica exclude) {
+        long now = System.nanoTime();
+        Replica best = null;
+        double bestScore = Double.MAX_VALUE;
+        Replica leastBusy = null;
+        Replica soonest = null;
+        for (Replica replica : this.replicas) {
+            if (replica == exclude) {
+                continue;
+            }
+            if (replica.isEjected(now)) {
+                if (soonest == null || replica.ejectedUntil - soonest.ejectedUntil < 0) {
+                    soonest = replica;
+                }
+            } else if (replica.average == 0.0) {
+                // Scoring it as free would send it every request until one answers.
+                if (replica.probing.compareAndSet(false, true)) {
+                    return replica;
+                }
+                if (leastBusy == null || replica.inFlight < leastBusy.inFlight) {
+                    leastBusy = replica;
+                }
+            } else if (replica.score() < bestScore) {
+                best = replica;
+                bestScore = replica.score();
+            }
+        }
+        if (best == null) {
+            best = leastBusy;
+        }
+        return best == null && exclude == null ? soonest : best;
+    }
+
+    int size() {
+        return this.replicas.length;
+    }
+
+    int getEjectedCount() {
+        long now = System.nanoTime();
+        int ejected = 0;
+        for (Replica replica : this.replicas) {
+            if (replica.isEjected(now)) {
+                ejected++;
+            }
+        }
+        return ejected;
+    }
+
+    /**
+     * Records how long a successful attempt at the endpoint took, for {@link #getHedgeDelay}.
+     */
+    void recordLatency(String endpoint, long nanos) {
+        LatencyWindow window = this.latencies.get(endpoint);
+        if (window == null) {
+            LatencyWindow created = new LatencyWindow();
+            window = this.latencies.putIfAbsent(endpoint, created);
+            if (window == null) {
+                window = created;
+            }
+        }
+        window.record(nanos);
+    }
+
+    /**
+     * @return the 95th percentile of recent successful attempts at the endpoint in milliseconds, or -1 until
+     * there are enough of them to go by
+     */
+    long getHedgeDelay(String endpoint) {
+        LatencyWindow window = this.latencies.get(endpoint);
+        return window == null ? -1L : window.p95;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaSet" + Arrays.toString(this.replicas);
+    }
+
+    final class Replica {
+        private final URL base;
+        private volatile double average;
+        private volatile int inFlight;
+        private final boolean[] outcomes = new boolean[Math.max(FAILURE_WINDOW, failureThreshold)];
+        private int nextOutcome;
+        private int failures;
+        private boolean onTrial;
+        private long delay;
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+        private final AtomicBoolean probing = new AtomicBoolean();
+
+        private Replica(URL base) {
+            this.base = base;
+        }
+
+        private boolean isEjected(long now) {
+            return this.ejected && now - this.ejectedUntil < 0;
+        }
+
+        private double score() {
+            return this.average * (this.inFlight + 1);
+        }
+
+        synchronized void onStart() {
+            this.inFlight++;
+        }
+
+        synchronized void onSuccess(long nanos) {
+            this.inFlight--;
+            update(nanos);
+            recordOutcome(false);
+            this.onTrial = false;
+            this.delay = 0L;
+            this.ejected = false;
+        }
+
+        synchronized void onFailure() {
+            this.inFlight--;
+            if (this.average != 0.0) {
+                this.average += EWMA_WEIGHT * (FAILURE_PENALTY * this.average - this.average);
+            }
+            this.probing.set(false);
+            recordOutcome(true);
+            if (this.onTrial || this.failures >= failureThreshold) {
+                this.delay = CircuitBreaker.nextDelay(baseDelay, maxDelay, this.delay);
+                this.ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.delay);
+                this.ejected = true;
+                // Once back, it is tried first and goes straight back out if it fails again.
+                Arrays.fill(this.outcomes, false);
+                this.failures = 0;
+                this.onTrial = true;
+                this.average = 0.0;
+            }
+        }
+
+        /**
+         * A request that was abandoned, such as the slower half of a hedge, says nothing about the replica. If it
+         * was the probe, the next request probes instead.
+         */
+        synchronized void onCancel() {
+            if (--this.inFlight == 0 && this.average == 0.0) {
+                this.probing.set(false);
+            }
+        }
+
+        private void recordOutcome(boolean failed) {
+            if (this.outcomes[this.nextOutcome]) {
+                this.failures--;
+            }
+            this.outcomes[this.nextOutcome] = failed;
+            if (failed) {
+                this.failures++;
+            }
+            this.nextOutcome = (this.nextOutcome + 1) % this.outcomes.length;
+        }
+
+        private void update(long nanos) {
+            double millis = nanos / 1000000.0;
+            this.average = this.average == 0.0 ? millis : this.average + EWMA_WEIGHT * (millis - this.average);
+            this.probing.set(false);
+        }
+
+        @Override
+        public String toString() {
+            return this.base + (this.ejected && System.nanoTime() - this.ejectedUntil < 0 ? " (ejected)" : String.format(Locale.ROOT, " (%.1f ms)", this.average));
+        }
+    }
+
+    /**
+     * The last {@link #LATENCY_WINDOW} attempt times, with their 95th percentile recomputed every
+     * {@link #LATENCY_RECOMPUTE_INTERVAL} samples. The shared histograms only resolve to powers of two, which is
+     * too coarse to time a hedge with.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[LATENCY_WINDOW];
+        private int next;
+        private int count;
+        private int sinceRecompute;
+        private volatile long p95 = -1L;
+
+        private synchronized void record(long nanos) {
+            this.samples[this.next] = nanos;
+            this.next = (this.next + 1) % this.samples.length;
+            if (this.count < this.samples.length) {
+                this.count++;
+            }
+            if (++this.sinceRecompute >= LATENCY_RECOMPUTE_INTERVAL || this.count == MIN_HEDGE_SAMPLES) {
+                this.sinceRecompute = 0;
+                if (this.count >= MIN_HEDGE_SAMPLES) {
+                    long[] sorted = Arrays.copyOf(this.samples, this.count);
+                    Arrays.sort(sorted);
+                    this.p95 = TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.ceil(sorted.length * 0.95) - 1]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.metrics.EndpointMetrics;
+import com.mojang.authlib.yggdrasil.response.Response;
+
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * One request against a {@link ReplicaSet}. A GET starts on the best replica; if it hasn't answered within the
+ * recent 95th percentile, the same request is sent to the next best replica and whichever answers first wins. A
+ * GET that fails as unavailable before that is sent on to the next best replica straight away. Either way a
+ * request goes to at most two replicas.
+ * <p>
+ * POSTs are sent to the best replica only, as they might not be safe to send twice.
+ */
+class ReplicatedRequest<T extends Response> {
+    private static final ScheduledThreadPoolExecutor HEDGE_SCHEDULER = createScheduler();
+    private static final long MIN_HEDGE_DELAY = 10L;
+    private final YggdrasilAuthenticationService service;
+    private final ReplicaSet replicas;
+    private final URL url;
+    private final Object input;
+    private final Class<T> classOfT;
+    private final EndpointMetrics endpoint;
+    private final CompletableFuture<T> future;
+    private final Executor executor;
+    private final boolean hedge;
+    private ReplicaSet.Replica first;
+    private boolean secondSent;
+    private int launched;
+    private int failed;
+
+    ReplicatedRequest(YggdrasilAuthenticationService service, ReplicaSet replicas, URL url, Object input, Class<T> classOfT, EndpointMetrics endpoint, CompletableFuture<T> future, Executor executor, boolean hedge) {
+        this.service = service;
+        this.replicas = replicas;
+        this.url = url;
+        this.input = input;
+        this.classOfT = classOfT;
+        this.endpoint = endpoint;
+        this.future = future;
+        this.executor = executor;
+        this.hedge = hedge && input == null;
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("Authlib Hedge #%d").setDaemon(true).build());
+        // Most requests answer before their hedge is due, so don't leave the cancelled timers queued.
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    void start() {
+        ReplicaSet.Replica replica = this.replicas.select(null);
+        synchronized (this) {
+            this.first = replica;
+            this.launched = 1;
+        }
+        launch(replica);
+        long delay = this.replicas.getHedgeDelay(this.endpoint.getName());
+        if (this.hedge && delay >= 0L && this.replicas.size() > 1 && !this.future.isDone()) {
+            final ScheduledFuture<?> timer = HEDGE_SCHEDULER.schedule(new Runnable() {
+                public void run() {
+                    sendSecond();
+                }
+            }, Math.max(MIN_HEDGE_DELAY, delay), TimeUnit.MILLISECONDS);
+            this.future.whenComplete(new BiConsumer<T, Throwable>() {
+                public void accept(T result, Throwable error) {
+                    timer.cancel(false);
+                }
+            });
+        }
+    }
+
+    private void sendSecond() {
+        ReplicaSet.Replica second;
+        synchronized (this) {
+            if (this.secondSent || this.future.isDone()) {
+                return;
+            }
+            this.secondSent = true;
+            second = this.replicas.select(this.first);
+            if (second != null) {
+                this.launched++;
+            }
+        }
+        if (second != null) {
+            launch(second);
+        }
+    }
+
+    /**
+     * Sends an attempt to the replica, which the caller has already counted as launched.
+     */
+    private void launch(final ReplicaSet.Replica replica) {
+        replica.onStart();
+        try {
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    attempt(replica);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            replica.onCancel();
+            onFailure(null, new AuthenticationUnavailableException("Cannot schedule request to " + this.url, e));
+        }
+    }
+
+    private void attempt(ReplicaSet.Replica replica) {
+        if (this.future.isDone()) {
+            replica.onCancel();
+            return;
+        }
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = this.service.performRequest(this.replicas.route(this.url, replica), this.input, this.classOfT, this.endpoint);
+        } catch (AuthenticationUnavailableException e) {
+            replica.onFailure();
+            onFailure(replica, e);
+            return;
+        } catch (Throwable t) {
+            // Any other error is still an answer from a healthy server, and the same answer a replica would give.
+            replica.onSuccess(System.nanoTime() - start);
+            this.future.completeExceptionally(t);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        replica.onSuccess(elapsed);
+        this.replicas.recordLatency(this.endpoint.getName(), elapsed);
+        this.future.complete(result);
+    }
+
+    /**
+     * @param replica the replica that failed, or null if the attempt never started
+     */
+    private void onFailure(ReplicaSet.Replica replica, AuthenticationUnavailableException error) {
+        ReplicaSet.Replica next = null;
+        synchronized (this) {
+            this.failed++;
+            if (this.input == null && !this.secondSent && replica != null) {
+                this.secondSent = true;
+                next = this.replicas.select(replica);
+                if (next != null) {
+                    this.launched++;
+                }
+            }
+            if (next == null && this.failed < this.launched) {
+                // The other attempt may still succeed.
+                return;
+            }
+        }
+        if (next != null) {
+            launch(next);
+        } else {
+            this.future.completeExceptionally(error);
+        }
+    }
+}
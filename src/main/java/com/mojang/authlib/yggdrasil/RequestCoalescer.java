@@ -0,0 +1,152 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical requests share a single call. The first caller for a key starts the call; everyone
+ * arriving while it is in flight waits for the same result.
+ * <p>
+ * Every caller gets its own future. Cancelling it, or letting it time out, only detaches that caller; the shared
+ * call is cancelled once every waiter has gone.
+ */
+public class RequestCoalescer<K, V> {
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Authlib Request Timeout").setDaemon(true).build());
+    private final ConcurrentMap<K, Flight> flights = new ConcurrentHashMap<K, Flight>();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        return execute(key, call, 0L);
+    }
+
+    /**
+     * @param timeout how long this caller waits, in milliseconds, before its future fails with a
+     *                {@link TimeoutException}; 0 to wait as long as the call takes
+     */
+    public CompletableFuture<V> execute(final K key, Supplier<CompletableFuture<V>> call, long timeout) {
+        Flight flight;
+        while (true) {
+            flight = this.flights.get(key);
+            if (flight != null && flight.join()) {
+                break;
+            }
+            Flight created = new Flight(key);
+            if (flight == null ? this.flights.putIfAbsent(key, created) == null : this.flights.replace(key, flight, created)) {
+                flight = created;
+                created.start(call);
+                break;
+            }
+        }
+
+        final Waiter waiter = new Waiter(flight);
+        flight.shared.whenComplete(new BiConsumer<V, Throwable>() {
+            public void accept(V result, Throwable error) {
+                if (error != null) {
+                    waiter.completeExceptionally(error);
+                } else {
+                    waiter.complete(result);
+                }
+            }
+        });
+        if (timeout > 0 && !waiter.isDone()) {
+            TIMEOUTS.schedule(new Runnable() {
+                public void run() {
+                    if (waiter.completeExceptionally(new TimeoutException("Timed out waiting for " + key))) {
+                        waiter.flight.leave();
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        return waiter;
+    }
+
+    /**
+     * @return the number of distinct calls currently in flight
+     */
+    public int getInFlight() {
+        return this.flights.size();
+    }
+
+    private final class Flight {
+        private final K key;
+        private final CompletableFuture<V> shared = new CompletableFuture<V>();
+        private final AtomicInteger waiters = new AtomicInteger(1);
+        private volatile CompletableFuture<V> call;
+
+        private Flight(K key) {
+            this.key = key;
+        }
+
+        void start(Supplier<CompletableFuture<V>> call) {
+            this.shared.whenComplete(new BiConsumer<V, Throwable>() {
+                public void accept(V result, Throwable error) {
+                    RequestCoalescer.this.flights.remove(Flight.this.key, Flight.this);
+                }
+            });
+            try {
+                this.call = call.get();
+                this.call.whenComplete(new BiConsumer<V, Throwable>() {
+                    public void accept(V result, Throwable error) {
+                        if (error != null) {
+                            Flight.this.shared.completeExceptionally(error);
+                        } else {
+                            Flight.this.shared.complete(result);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                this.shared.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * @return false if every waiter already left and the flight is being torn down
+         */
+        boolean join() {
+            while (true) {
+                int current = this.waiters.get();
+                if (current == 0 || this.shared.isCancelled()) {
+                    return false;
+                }
+                if (this.waiters.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void leave() {
+            if (this.waiters.decrementAndGet() == 0 && !this.shared.isDone()) {
+                this.shared.cancel(false);
+                CompletableFuture<V> call = this.call;
+                if (call != null) {
+                    call.cancel(false);
+                }
+            }
+        }
+    }
+
+    private final class Waiter extends CompletableFuture<V> {
+        private final Flight flight;
+
+        private Waiter(Flight flight) {
+            this.flight = flight;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                this.flight.leave();
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mojang.authlib.Agent;
+import com.mojang.authlib.exceptions.AuthenticationException;
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.exceptions.TooManyRequestsException;
+import com.mojang.authlib.metrics.AuthMetrics;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the access tokens of many logged in {@link YggdrasilUserAuthentication}s fresh. Each session is refreshed
+ * {@code refreshMargin} milliseconds before its token reaches {@code tokenLifetime}, less a random share of
+ * {@code jitter} so sessions that logged in together don't all refresh together. Refreshes are due on a
+ * {@link TimerWheel} and run on a small pool, which caps how many are in flight.
+ * <p>
+ * Refreshing a session synchronizes on its authentication; code using a managed authentication should too.
+ */
+public class SessionManager implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long TICK = 1000L;
+    private static final int WHEEL_SIZE = 512;
+    private static final int DEFAULT_MAX_CONCURRENT_REFRESHES = 4;
+    private static final long RETRY_BASE_DELAY = TimeUnit.SECONDS.toMillis(5L);
+    private static final long RETRY_MAX_DELAY = TimeUnit.MINUTES.toMillis(5L);
+    private final YggdrasilAuthenticationService authenticationService;
+    private final Agent agent;
+    private final long tokenLifetime;
+    private final long refreshMargin;
+    private volatile long jitter;
+    private volatile Listener listener;
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final TimerWheel wheel = new TimerWheel(TICK, WHEEL_SIZE, System.currentTimeMillis());
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Authlib Session Timer #%d").setDaemon(true).build());
+    private final ThreadPoolExecutor refreshes = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENT_REFRESHES, DEFAULT_MAX_CONCURRENT_REFRESHES, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("Authlib Session Refresh #%d").setDaemon(true).build());
+    private final AtomicInteger refreshing = new AtomicInteger();
+
+    /**
+     * @param tokenLifetime how long, in milliseconds, the auth server keeps an access token valid
+     * @param refreshMargin how long before then to refresh it
+     */
+    public SessionManager(YggdrasilAuthenticationService authenticationService, Agent agent, long tokenLifetime, long refreshMargin) {
+        Validate.isTrue(tokenLifetime > 0, "tokenLifetime must be positive");
+        Validate.isTrue(refreshMargin >= 0 && refreshMargin < tokenLifetime, "Expected 0 <= refreshMargin < tokenLifetime");
+        this.authenticationService = authenticationService;
+        this.agent = agent;
+        this.tokenLifetime = tokenLifetime;
+        this.refreshMargin = refreshMargin;
+        this.jitter = refreshMargin / 2;
+        this.refreshes.allowCoreThreadTimeOut(true);
+        this.ticker.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    wheel.advance(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    LOGGER.error("Couldn't advance session timer", e);
+                }
+            }
+        }, TICK, TICK, TimeUnit.MILLISECONDS);
+
+        AuthMetrics metrics = authenticationService.getMetrics();
+        metrics.registerGauge("sessions.managed", new AuthMetrics.Gauge() {
+            public long getValue() {
+                return sessions.size();
+            }
+        });
+        metrics.registerGauge("sessions.refreshing", new AuthMetrics.Gauge() {
+            public long getValue() {
+                return refreshing.get();
+            }
+        });
+    }
+
+    /**
+     * Sets the largest random amount, in milliseconds, taken off each refresh time.
+     */
+    public void setJitter(long jitter) {
+        Validate.isTrue(jitter >= 0 && jitter < this.tokenLifetime - this.refreshMargin, "Expected 0 <= jitter < tokenLifetime - refreshMargin");
+        this.jitter = jitter;
+    }
+
+    public void setMaxConcurrentRefreshes(int maxConcurrentRefreshes) {
+        Validate.isTrue(maxConcurrentRefreshes > 0, "maxConcurrentRefreshes must be positive");
+        if (maxConcurrentRefreshes > this.refreshes.getMaximumPoolSize()) {
+            this.refreshes.setMaximumPoolSize(maxConcurrentRefreshes);
+            this.refreshes.setCorePoolSize(maxConcurrentRefreshes);
+        } else {
+            this.refreshes.setCorePoolSize(maxConcurrentRefreshes);
+            this.refreshes.setMaximumPoolSize(maxConcurrentRefreshes);
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts managing a logged in authentication, replacing any session with the same id. A token of unknown age
+     * is refreshed at a random point within the jitter, so a large batch doesn't go out at once.
+     */
+    public void add(String id, YggdrasilUserAuthentication authentication) {
+        Validate.notNull(id);
+        Validate.notNull(authentication);
+        Validate.isTrue(authentication.isLoggedIn(), "Only logged in authentications can be managed");
+        Session session = new Session(id, authentication);
+        Session previous = this.sessions.put(id, session);
+        if (previous != null) {
+            this.wheel.cancel(previous);
+        }
+        scheduleRefresh(session);
+    }
+
+    /**
+     * @return the authentication that is no longer managed, or null if there was none
+     */
+    public YggdrasilUserAuthentication remove(String id) {
+        Session session = this.sessions.remove(id);
+        if (session == null) {
+            return null;
+        }
+        this.wheel.cancel(session);
+        return session.authentication;
+    }
+
+    public YggdrasilUserAuthentication get(String id) {
+        Session session = this.sessions.get(id);
+        return session == null ? null : session.authentication;
+    }
+
+    public int size() {
+        return this.sessions.size();
+    }
+
+    /**
+     * @return the {@link YggdrasilUserAuthentication#saveForStorage()} output of every session, by id
+     */
+    public Map<String, Map<String, Object>> save() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<String, Map<String, Object>>();
+        for (Session session : this.sessions.values()) {
+            synchronized (session.authentication) {
+                result.put(session.id, session.authentication.saveForStorage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a session for each entry of {@link #save()} output. The tokens are not checked; ones that turn out to be
+     * invalid are dropped on their first refresh.
+     */
+    public void load(Map<String, Map<String, Object>> saved) {
+        for (Map.Entry<String, Map<String, Object>> entry : saved.entrySet()) {
+            YggdrasilUserAuthentication authentication = (YggdrasilUserAuthentication) this.authenticationService.createUserAuthentication(this.agent);
+            authentication.loadFromStorage(entry.getValue());
+            if (authentication.isLoggedIn()) {
+                add(entry.getKey(), authentication);
+            } else {
+                LOGGER.warn("Not loading session {} as it has no access token", new Object[]{entry.getKey()});
+            }
+        }
+    }
+
+    /**
+     * Stops refreshing. Refreshes already running are left to finish.
+     */
+    public void close() {
+        this.ticker.shutdownNow();
+        this.refreshes.shutdown();
+    }
+
+    private void scheduleRefresh(Session session) {
+        long jitter = this.jitter;
+        long offset = jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0L;
+        long obtainedAt = session.authentication.getTokenObtainedAt();
+        long delay;
+        if (obtainedAt < 0) {
+            delay = offset;
+        } else {
+            delay = obtainedAt + this.tokenLifetime - this.refreshMargin - offset - System.currentTimeMillis();
+        }
+        this.wheel.schedule(session, delay);
+    }
+
+    private void refresh(Session session) {
+        if (this.sessions.get(session.id) != session) {
+            return;
+        }
+        this.refreshing.incrementAndGet();
+        try {
+            synchronized (session.authentication) {
+                session.authentication.refreshAccessToken();
+            }
+            session.backoff = 0L;
+            if (this.sessions.get(session.id) == session) {
+                scheduleRefresh(session);
+            }
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onRefreshed(session.id, session.authentication);
+            }
+        } catch (AuthenticationUnavailableException e) {
+            long delay = CircuitBreaker.nextDelay(RETRY_BASE_DELAY, RETRY_MAX_DELAY, session.backoff);
+            if (e instanceof TooManyRequestsException) {
+                delay = Math.max(delay, ((TooManyRequestsException) e).getRetryAfter());
+            }
+            session.backoff = delay;
+            LOGGER.debug("Couldn't refresh session {}, retrying in {} ms: {}", new Object[]{session.id, Long.valueOf(delay), e.toString()});
+            if (this.sessions.get(session.id) == session) {
+                this.wheel.schedule(session, delay);
+            }
+        } catch (AuthenticationException e) {
+            LOGGER.warn("Dropping session {} as its token was rejected: {}", new Object[]{session.id, e.toString()});
+            this.sessions.remove(session.id, session);
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onFailed(session.id, session.authentication, e);
+            }
+        } finally {
+            this.refreshing.decrementAndGet();
+        }
+    }
+
+    /**
+     * Told about refreshes as they happen, for example to persist the new tokens. Called on a refresh thread.
+     */
+    public interface Listener {
+        void onRefreshed(String id, YggdrasilUserAuthentication authentication);
+
+        /**
+         * The session was dropped because the server rejected its token; it has to log in again.
+         */
+        void onFailed(String id, YggdrasilUserAuthentication authentication, AuthenticationException cause);
+    }
+
+    private final class Session extends TimerWheel.Timeout implements Runnable {
+        private final String id;
+        private final YggdrasilUserAuthentication authentication;
+        private long backoff;
+
+        private Session(String id, YggdrasilUserAuthentication authentication) {
+            this.id = id;
+            this.authentication = authentication;
+        }
+
+        void expire() {
+            try {
+                refreshes.execute(this);
+            } catch (RejectedExecutionException ignored) {
+                // Closed.
+            }
+        }
+
+        public void run() {
+            refresh(this);
+        }
+    }
+}
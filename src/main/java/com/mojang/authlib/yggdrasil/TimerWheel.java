@@ -0,0 +1,147 @@
+package com.mojang.authlib.yggdrasil;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timer wheel: timeouts are hashed by due tick into a ring of buckets, so scheduling and cancelling are
+ * constant time however many are pending, and each tick only looks at one bucket. Timeouts are intrusive list
+ * nodes, so a pending timeout costs no allocation beyond the object itself.
+ * <p>
+ * Time only moves forward when {@link #advance(long)} is called, normally from a fixed rate task.
+ */
+final class TimerWheel {
+    private static final int IDLE = -1;
+    private static final int EXPIRING = -2;
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long start;
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    TimerWheel(long tickMillis, int wheelSize, long now) {
+        Validate.isTrue(tickMillis > 0, "tickMillis must be positive");
+        Validate.isTrue(wheelSize > 0 && wheelSize <= 1 << 20, "wheelSize must be between 1 and 2^20");
+        int buckets = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.tickMillis = tickMillis;
+        this.buckets = new Timeout[Math.max(1, buckets)];
+        this.mask = this.buckets.length - 1;
+        this.start = now;
+    }
+
+    long getTickMillis() {
+        return this.tickMillis;
+    }
+
+    synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Schedules the timeout to expire {@code delay} milliseconds after the current tick, rescheduling it if it was
+     * already pending. Expiry is rounded up to the next tick.
+     */
+    synchronized void schedule(Timeout timeout, long delay) {
+        if (timeout.bucket >= 0) {
+            unlink(timeout);
+        }
+        long ticks = Math.max(1L, (Math.max(0L, delay) + this.tickMillis - 1) / this.tickMillis);
+        timeout.deadline = this.currentTick + ticks;
+        int bucket = (int) (timeout.deadline & this.mask);
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = this.buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        this.buckets[bucket] = timeout;
+        this.size++;
+    }
+
+    /**
+     * @return whether the timeout was pending, or due but not yet expired
+     */
+    synchronized boolean cancel(Timeout timeout) {
+        if (timeout.bucket == EXPIRING) {
+            timeout.bucket = IDLE;
+            return true;
+        }
+        if (timeout.bucket < 0) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Moves the wheel up to {@code now} and expires every timeout that came due, outside the lock. A due timeout
+     * that is cancelled or rescheduled before its turn, such as by an earlier expiry, is not expired.
+     */
+    void advance(long now) {
+        List<Timeout> expired = null;
+        synchronized (this) {
+            long target = (now - this.start) / this.tickMillis;
+            while (this.currentTick < target) {
+                this.currentTick++;
+                Timeout timeout = this.buckets[(int) (this.currentTick & this.mask)];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    // A bucket also holds timeouts due a whole number of turns later.
+                    if (timeout.deadline <= this.currentTick) {
+                        unlink(timeout);
+                        timeout.bucket = EXPIRING;
+                        if (expired == null) {
+                            expired = new ArrayList<Timeout>();
+                        }
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+            }
+        }
+        if (expired != null) {
+            for (Timeout timeout : expired) {
+                synchronized (this) {
+                    if (timeout.bucket != EXPIRING) {
+                        continue;
+                    }
+                    timeout.bucket = IDLE;
+                }
+                timeout.expire();
+            }
+        }
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            this.buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = IDLE;
+        this.size--;
+    }
+
+    abstract static class Timeout {
+        private long deadline;
+        private int bucket = IDLE;
+        private Timeout prev;
+        private Timeout next;
+
+        /**
+         * Called once the timeout is due, on the thread advancing the wheel. Should hand off anything slow.
+         */
+        abstract void expire();
+    }
+}
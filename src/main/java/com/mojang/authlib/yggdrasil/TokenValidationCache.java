@@ -0,0 +1,54 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access tokens the auth server issued or confirmed as valid within the last {@code ttl} milliseconds. Logging in
+ * again with one of them skips the validate call. Shared by every user authentication created from one
+ * {@link YggdrasilAuthenticationService}, so reconnecting clients benefit too.
+ */
+public class TokenValidationCache {
+    private final long ttl;
+    private final Cache<String, Boolean> tokens;
+
+    public TokenValidationCache(long ttl) {
+        Validate.isTrue(ttl > 0, "ttl must be positive");
+        this.ttl = ttl;
+        this.tokens = CacheBuilder.newBuilder().expireAfterWrite(ttl, TimeUnit.MILLISECONDS).maximumSize(4096L).recordStats().build();
+    }
+
+    public long getTtl() {
+        return this.ttl;
+    }
+
+    public boolean isValid(String accessToken) {
+        return accessToken != null && this.tokens.getIfPresent(accessToken) != null;
+    }
+
+    public void markValid(String accessToken) {
+        if (accessToken != null) {
+            this.tokens.put(accessToken, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Forgets a token, as when the server rejected it or it was replaced by a refresh.
+     */
+    public void invalidate(String accessToken) {
+        if (accessToken != null) {
+            this.tokens.invalidate(accessToken);
+        }
+    }
+
+    public void invalidateAll() {
+        this.tokens.invalidateAll();
+    }
+
+    Cache<String, Boolean> getCache() {
+        return this.tokens;
+    }
+}
@@ -1,52 +1,146 @@
 package com.mojang.authlib.yggdrasil;
 
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import com.mojang.authlib.Agent;
-import com.mojang.authlib.GameProfile;
 import com.mojang.authlib.GameProfileRepository;
 import com.mojang.authlib.HttpAuthenticationService;
 import com.mojang.authlib.UserAuthentication;
 import com.mojang.authlib.exceptions.AuthenticationException;
 import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.exceptions.CircuitOpenException;
 import com.mojang.authlib.exceptions.InvalidCredentialsException;
+import com.mojang.authlib.exceptions.MalformedResponseException;
+import com.mojang.authlib.exceptions.ResponseTooLargeException;
+import com.mojang.authlib.exceptions.TooManyRequestsException;
+import com.mojang.authlib.exceptions.UnexpectedStatusException;
 import com.mojang.authlib.exceptions.UserMigratedException;
+import com.mojang.authlib.http.BodyTooLargeException;
+import com.mojang.authlib.http.BoundedInputStream;
+import com.mojang.authlib.http.CachingHostResolver;
+import com.mojang.authlib.http.ContentEncoding;
+import com.mojang.authlib.http.HostResolver;
+import com.mojang.authlib.http.HttpRequest;
+import com.mojang.authlib.http.HttpResponse;
+import com.mojang.authlib.http.HttpTransport;
+import com.mojang.authlib.http.PooledHttpTransport;
+import com.mojang.authlib.http.RequestBody;
+import com.mojang.authlib.metrics.AuthMetrics;
+import com.mojang.authlib.metrics.EndpointMetrics;
 import com.mojang.authlib.minecraft.MinecraftSessionService;
-import com.mojang.authlib.properties.PropertyMap;
-import com.mojang.authlib.yggdrasil.response.ProfileSearchResultsResponse;
-import com.mojang.authlib.yggdrasil.response.ProfileSearchResultsResponse.Serializer;
 import com.mojang.authlib.yggdrasil.response.Response;
-import com.mojang.util.UUIDTypeAdapter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.Proxy;
 import java.net.URL;
-import java.util.UUID;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 public class YggdrasilAuthenticationService extends HttpAuthenticationService {
+    static final Executor DIRECT_EXECUTOR = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final int DEFAULT_ASYNC_THREADS = 32;
+    private static final long DEFAULT_MAX_RESPONSE_SIZE = 4L * 1024 * 1024;
+    private static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_CIRCUIT_BASE_DELAY = 500L;
+    private static final long DEFAULT_CIRCUIT_MAX_DELAY = 30000L;
+    private static final int DEFAULT_EJECTION_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_EJECTION_BASE_DELAY = 10000L;
+    private static final long DEFAULT_EJECTION_MAX_DELAY = 300000L;
+    private static final long DEFAULT_TOKEN_VALIDATION_TTL = TimeUnit.MINUTES.toMillis(5L);
+    private static final byte[] FORM_PREFIX = "data=".getBytes(Charsets.UTF_8);
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String[] ENDPOINT_PATHS = {"/hasJoined/batch", "/hasJoined", "/join", "/profiles/", "/profile/", "/authenticate", "/refresh", "/invalidate", "/validate", "/signout"};
+    private static final String[] ENDPOINT_NAMES = {"hasJoinedBatch", "hasJoined", "join", "profiles", "profile", "authenticate", "refresh", "invalidate", "validate", "signout"};
     private final String clientToken;
     private final Gson gson;
+    private volatile Executor executor;
+    private volatile long maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
+    private volatile boolean streamRequestBodies;
+    private volatile boolean acceptCompressedResponses = true;
+    private volatile long requestCompressionThreshold = -1L;
+    private volatile long coalescedWaitTimeout;
+    private final RequestCoalescer<RequestKey, Response> inFlightRequests = new RequestCoalescer<RequestKey, Response>();
+    private final AuthMetrics metrics = new AuthMetrics();
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+    private volatile int circuitFailureThreshold = DEFAULT_CIRCUIT_FAILURE_THRESHOLD;
+    private volatile long circuitBaseDelay = DEFAULT_CIRCUIT_BASE_DELAY;
+    private volatile long circuitMaxDelay = DEFAULT_CIRCUIT_MAX_DELAY;
+    private final ConcurrentMap<String, ReplicaSet> replicaSets = new ConcurrentHashMap<String, ReplicaSet>();
+    private volatile int ejectionFailureThreshold = DEFAULT_EJECTION_FAILURE_THRESHOLD;
+    private volatile long ejectionBaseDelay = DEFAULT_EJECTION_BASE_DELAY;
+    private volatile long ejectionMaxDelay = DEFAULT_EJECTION_MAX_DELAY;
+    private volatile boolean hedgeRequests = true;
+    private volatile TokenValidationCache tokenValidationCache;
+    private volatile EndpointConfiguration endpointConfiguration = EndpointConfiguration.getDefault();
 
     public YggdrasilAuthenticationService(Proxy proxy, String clientToken) {
         super(proxy);
         this.clientToken = clientToken;
-        GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(GameProfile.class, new GameProfileSerializer());
-        builder.registerTypeAdapter(PropertyMap.class, new PropertyMap.Serializer());
-        builder.registerTypeAdapter(UUID.class, new UUIDTypeAdapter());
-        builder.registerTypeAdapter(ProfileSearchResultsResponse.class, new ProfileSearchResultsResponse.Serializer());
-        this.gson = builder.create();
+        this.gson = YggdrasilCodec.GSON;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("Authlib Request #%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        setTokenValidationTtl(DEFAULT_TOKEN_VALIDATION_TTL);
+        prefetchHosts();
+        this.metrics.registerGauge("requests.coalesced", new AuthMetrics.Gauge() {
+            public long getValue() {
+                return inFlightRequests.getInFlight();
+            }
+        });
+        this.metrics.registerGauge("replicas.auth.ejected", new AuthMetrics.Gauge() {
+            public long getValue() {
+                ReplicaSet replicas = getReplicaSet(getEndpoints().getAuthReplicas());
+                return replicas == null ? 0L : replicas.getEjectedCount();
+            }
+        });
+        this.metrics.registerGauge("replicas.session.ejected", new AuthMetrics.Gauge() {
+            public long getValue() {
+                ReplicaSet replicas = getReplicaSet(getEndpoints().getSessionReplicas());
+                return replicas == null ? 0L : replicas.getEjectedCount();
+            }
+        });
     }
 
     public UserAuthentication createUserAuthentication(Agent agent) {
@@ -61,53 +155,592 @@ public class YggdrasilAuthenticationService extends HttpAuthenticationService {
         return new YggdrasilGameProfileRepository(this);
     }
 
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Sets the executor that runs asynchronous requests. The connection per request is still a blocking socket, so
+     * the executor bounds how many requests are in flight at once; on Java 21+ a virtual thread per task executor
+     * lifts that bound without pinning platform threads.
+     */
+    public void setExecutor(Executor executor) {
+        Validate.notNull(executor);
+        this.executor = executor;
+    }
+
+    /**
+     * @return latency and error metrics of every request this service makes, along with the caches and gauges of
+     * the services created from it
+     */
+    public AuthMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return the access tokens recently confirmed valid, shared by all user authentications of this service
+     */
+    public TokenValidationCache getTokenValidationCache() {
+        return this.tokenValidationCache;
+    }
+
+    /**
+     * Sets how long, in milliseconds, an access token that was issued or validated is trusted without asking the
+     * server again. Tokens already cached are forgotten.
+     */
+    public void setTokenValidationTtl(long ttl) {
+        TokenValidationCache cache = new TokenValidationCache(ttl);
+        this.tokenValidationCache = cache;
+        this.metrics.registerCache("user.validatedTokens", cache.getCache());
+    }
+
+    /**
+     * @return the endpoints requests go to right now
+     */
+    public YggdrasilEndpoints getEndpoints() {
+        return this.endpointConfiguration.get();
+    }
+
+    /**
+     * @return the configuration set with {@link #setEndpointConfiguration}, or else the shared
+     * {@link EndpointConfiguration#getDefault()}, so setting endpoints on it affects every such service
+     */
+    public EndpointConfiguration getEndpointConfiguration() {
+        return this.endpointConfiguration;
+    }
+
+    /**
+     * Switches to another endpoint configuration, such as one loaded from a watched file with
+     * {@link EndpointConfiguration#load(java.io.File)}. Requests already in flight keep their URLs. The previous
+     * configuration is left open, as it is either the shared default or the caller's own.
+     */
+    public void setEndpointConfiguration(EndpointConfiguration endpointConfiguration) {
+        Validate.notNull(endpointConfiguration);
+        this.endpointConfiguration = endpointConfiguration;
+        prefetchHosts();
+    }
+
+    /**
+     * Starts looking up the hosts of every endpoint, so the first requests don't wait on DNS. Only done when the
+     * transport resolves through a {@link CachingHostResolver}; anything else, like a transport going through a
+     * proxy, wouldn't use the result.
+     */
+    private void prefetchHosts() {
+        HttpTransport transport = getTransport();
+        HostResolver resolver = transport instanceof PooledHttpTransport ? ((PooledHttpTransport) transport).getHostResolver() : null;
+        if (!(resolver instanceof CachingHostResolver)) {
+            return;
+        }
+        YggdrasilEndpoints endpoints = getEndpoints();
+        Set<String> hosts = new LinkedHashSet<String>();
+        for (URL base : endpoints.getAuthReplicas()) {
+            hosts.add(base.getHost());
+        }
+        for (URL base : endpoints.getSessionReplicas()) {
+            hosts.add(base.getHost());
+        }
+        hosts.add(endpoints.getProfilesBase().getHost());
+        ((CachingHostResolver) resolver).prefetch(hosts.toArray(new String[hosts.size()]));
+    }
+
     protected <T extends Response> Response makeRequest(URL url, Object input, Class<T> classOfT) throws AuthenticationException {
+        return getResult(makeRequestAsync(url, input, classOfT, DIRECT_EXECUTOR));
+    }
+
+    protected <T extends Response> CompletableFuture<T> makeRequestAsync(URL url, Object input, Class<T> classOfT) {
+        return makeRequestAsync(url, input, classOfT, this.executor);
+    }
+
+    /**
+     * Concurrent GET requests for the same URL and response type share one network call and one parsed response.
+     * POST requests are never coalesced.
+     */
+    <T extends Response> CompletableFuture<T> makeRequestAsync(final URL url, Object input, final Class<T> classOfT, final Executor executor) {
+        if (input != null) {
+            return sendRequest(url, input, classOfT, executor);
+        }
+        CompletableFuture<Response> shared = this.inFlightRequests.execute(new RequestKey(url, classOfT), new Supplier<CompletableFuture<Response>>() {
+            public CompletableFuture<Response> get() {
+                return YggdrasilAuthenticationService.this.<Response>sendRequest(url, null, (Class) classOfT, executor);
+            }
+        }, this.coalescedWaitTimeout);
+        return (CompletableFuture<T>) shared;
+    }
+
+    public long getCoalescedWaitTimeout() {
+        return this.coalescedWaitTimeout;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a caller waits on a request that another caller already started before
+     * giving up on its own with a {@link java.util.concurrent.TimeoutException}. 0 waits for the request itself
+     * to finish or time out.
+     */
+    public void setCoalescedWaitTimeout(long coalescedWaitTimeout) {
+        this.coalescedWaitTimeout = coalescedWaitTimeout;
+    }
+
+    private <T extends Response> CompletableFuture<T> sendRequest(final URL url, final Object input, final Class<T> classOfT, Executor executor) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        final String name = endpointName(url);
+        final CircuitBreaker breaker = getCircuitBreaker(name);
         try {
-            String jsonResult = input == null ?
-                    performGetRequest(url) :
-                    performPostRequest(url, this.gson.toJson(input), "application/jsonp");
-            Response result = (Response) this.gson.fromJson(jsonResult, classOfT);
+            // Don't even take a thread for a request the breaker is going to refuse.
+            breaker.check();
+        } catch (CircuitOpenException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        ReplicaSet replicas = getReplicaSet(url);
+        if (replicas != null) {
+            // Attempts always run on the service's executor, as a hedge can't wait for the caller's thread.
+            final long permit;
+            try {
+                permit = breaker.acquire();
+            } catch (CircuitOpenException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+            final EndpointMetrics endpoint = this.metrics.endpoint(name);
+            final long start = endpoint.start();
+            future.whenComplete(new BiConsumer<T, Throwable>() {
+                public void accept(T result, Throwable error) {
+                    endpoint.stop(start, error);
+                    breaker.record(permit, error);
+                }
+            });
+            new ReplicatedRequest<T>(this, replicas, url, input, classOfT, endpoint, future, this.executor, this.hedgeRequests).start();
+            return future;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    if (future.isDone()) {
+                        return;
+                    }
+                    long permit;
+                    try {
+                        permit = breaker.acquire();
+                    } catch (CircuitOpenException e) {
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    EndpointMetrics endpoint = metrics.endpoint(name);
+                    long start = endpoint.start();
+                    Throwable error = null;
+                    try {
+                        future.complete(performRequest(url, input, classOfT, endpoint));
+                    } catch (Throwable t) {
+                        error = t;
+                        future.completeExceptionally(t);
+                    } finally {
+                        endpoint.stop(start, error);
+                        breaker.record(permit, error);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new AuthenticationUnavailableException("Cannot schedule request to " + url, e));
+        }
+        return future;
+    }
 
-            if (result == null) {
-                return null;
+    /**
+     * @return the replicas of the server the URL was built for, or null if it has none
+     */
+    private ReplicaSet getReplicaSet(URL url) {
+        YggdrasilEndpoints endpoints = getEndpoints();
+        ReplicaSet replicas = getReplicaSet(endpoints.getSessionReplicas());
+        if (replicas != null && replicas.covers(url)) {
+            return replicas;
+        }
+        replicas = getReplicaSet(endpoints.getAuthReplicas());
+        return replicas != null && replicas.covers(url) ? replicas : null;
+    }
+
+    /**
+     * Replica sets are kept by their bases, so the response times and ejections of a server survive reloads of the
+     * endpoint configuration that don't change it.
+     */
+    private ReplicaSet getReplicaSet(List<URL> bases) {
+        if (bases.size() < 2) {
+            return null;
+        }
+        String key = bases.toString();
+        ReplicaSet replicas = this.replicaSets.get(key);
+        if (replicas == null) {
+            ReplicaSet created = new ReplicaSet(bases, this.ejectionFailureThreshold, this.ejectionBaseDelay, this.ejectionMaxDelay);
+            replicas = this.replicaSets.putIfAbsent(key, created);
+            if (replicas == null) {
+                replicas = created;
             }
+        }
+        return replicas;
+    }
+
+    /**
+     * Configures how replicas are ejected: a replica is skipped after {@code failureThreshold} unavailable errors
+     * among its last 20 requests, or as many as the threshold if that is more, for a jittered backoff between {@code baseDelay} and {@code maxDelay} milliseconds. Existing
+     * replica sets are replaced, forgetting their response times.
+     */
+    public void setReplicaEjectionSettings(int failureThreshold, long baseDelay, long maxDelay) {
+        Validate.isTrue(failureThreshold > 0, "failureThreshold must be positive");
+        Validate.isTrue(baseDelay > 0 && maxDelay >= baseDelay, "Expected 0 < baseDelay <= maxDelay");
+        this.ejectionFailureThreshold = failureThreshold;
+        this.ejectionBaseDelay = baseDelay;
+        this.ejectionMaxDelay = maxDelay;
+        this.replicaSets.clear();
+    }
+
+    /**
+     * Whether a GET to a replicated server that is slower than the recent 95th percentile is also sent to a second
+     * replica, taking whichever answer comes first. On by default; has no effect without replicas.
+     */
+    public void setHedgeRequests(boolean hedgeRequests) {
+        this.hedgeRequests = hedgeRequests;
+    }
+
+    /**
+     * Names the endpoint a URL belongs to for metrics, without allocating.
+     */
+    static String endpointName(URL url) {
+        String path = url.getPath();
+        for (int i = 0; i < ENDPOINT_PATHS.length; i++) {
+            if (path.indexOf(ENDPOINT_PATHS[i]) >= 0) {
+                return ENDPOINT_NAMES[i];
+            }
+        }
+        return "other";
+    }
+
+    /**
+     * @return the breaker guarding the named endpoint, shared by every service created from this one
+     */
+    public CircuitBreaker getCircuitBreaker(String endpoint) {
+        CircuitBreaker breaker = this.circuitBreakers.get(endpoint);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(endpoint, this.circuitFailureThreshold, this.circuitBaseDelay, this.circuitMaxDelay);
+            breaker = this.circuitBreakers.putIfAbsent(endpoint, created);
+            if (breaker == null) {
+                breaker = created;
+                this.metrics.registerGauge("circuit." + endpoint + ".open", new CircuitGauge(endpoint));
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Configures the circuit breakers: an endpoint is cut off after {@code failureThreshold} unavailable errors in
+     * a row, for a jittered backoff between {@code baseDelay} and {@code maxDelay} milliseconds. Existing breakers
+     * are replaced and start out closed.
+     */
+    public void setCircuitBreakerSettings(int failureThreshold, long baseDelay, long maxDelay) {
+        Validate.isTrue(failureThreshold > 0, "failureThreshold must be positive");
+        Validate.isTrue(baseDelay > 0 && maxDelay >= baseDelay, "Expected 0 < baseDelay <= maxDelay");
+        this.circuitFailureThreshold = failureThreshold;
+        this.circuitBaseDelay = baseDelay;
+        this.circuitMaxDelay = maxDelay;
+        this.circuitBreakers.clear();
+    }
+
+    public long getMaxResponseSize() {
+        return this.maxResponseSize;
+    }
+
+    /**
+     * Sets the largest response body, in bytes, that will be parsed. Larger responses fail with
+     * {@link ResponseTooLargeException}.
+     */
+    public void setMaxResponseSize(long maxResponseSize) {
+        Validate.isTrue(maxResponseSize > 0, "maxResponseSize must be positive");
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * By default request bodies are serialized into a buffer first so they can be sent with a Content-Length. When
+     * enabled, they are written straight to the connection with chunked transfer encoding instead, which the
+     * server has to support.
+     */
+    public void setStreamRequestBodies(boolean streamRequestBodies) {
+        this.streamRequestBodies = streamRequestBodies;
+    }
 
-            if (StringUtils.isNotBlank(result.getError())) {
-                if ("UserMigratedException".equals(result.getCause()))
-                    throw new UserMigratedException(result.getErrorMessage());
-                if (result.getError().equals("ForbiddenOperationException")) {
-                    throw new InvalidCredentialsException(result.getErrorMessage());
+    /**
+     * Whether to ask for gzip or deflate compressed responses, which are decoded as they are parsed. On by default;
+     * servers that don't compress simply ignore the request.
+     */
+    public void setAcceptCompressedResponses(boolean acceptCompressedResponses) {
+        this.acceptCompressedResponses = acceptCompressedResponses;
+    }
+
+    /**
+     * Gzips buffered request bodies of at least {@code threshold} bytes, such as large name lookups, and sends
+     * them with {@code Content-Encoding: gzip}, which the server has to support. -1, the default, never compresses.
+     * Streamed bodies are never compressed.
+     */
+    public void setRequestCompressionThreshold(long threshold) {
+        Validate.isTrue(threshold >= -1, "threshold must be -1 or more");
+        this.requestCompressionThreshold = threshold;
+    }
+
+    <T extends Response> T performRequest(URL url, Object input, Class<T> classOfT, EndpointMetrics endpoint) throws AuthenticationException {
+        HttpRequest request;
+        JsonFormBody body = null;
+        if (input == null) {
+            request = new HttpRequest("GET", url);
+        } else {
+            body = new JsonFormBody(input, this.streamRequestBodies);
+            request = new HttpRequest("POST", url).setBody(body);
+        }
+        if (this.acceptCompressedResponses) {
+            request.setHeader("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+        }
+        long maxResponseSize = this.maxResponseSize;
+        long compressionThreshold = this.requestCompressionThreshold;
+        HttpResponse response = null;
+        CountingInputStream received = null;
+        BoundedInputStream decoded = null;
+        try {
+            if (body != null && compressionThreshold >= 0 && body.compress(compressionThreshold)) {
+                request.setHeader("Content-Encoding", ContentEncoding.GZIP);
+            }
+            LOGGER.debug("Sending {}", new Object[]{request});
+            response = getTransport().execute(request);
+            int status = response.getStatusCode();
+            LOGGER.debug("Reading data from {}, server response was {}", new Object[]{url, Integer.valueOf(status)});
+            if (status == 429) {
+                throw new TooManyRequestsException("Rate limited by " + url.getHost(), parseRetryAfter(response.getHeader("Retry-After")));
+            }
+            if (status >= 300 && status < 400) {
+                // Not followed: the transport doesn't, and a POST can't be replayed against wherever it points.
+                throw new UnexpectedStatusException("Unexpected redirect " + status + " from " + url + " to " + response.getHeader("Location"), status);
+            }
+            // The limit applies to the decoded body, so a small compressed response can't inflate without bound.
+            received = new CountingInputStream(response.getBody());
+            decoded = new BoundedInputStream(ContentEncoding.decode(response.getHeader("Content-Encoding"), received), maxResponseSize);
+            JsonReader reader = new JsonReader(new InputStreamReader(decoded, Charsets.UTF_8));
+            boolean success = status >= 200 && status < 300;
+            T result = success ? this.gson.fromJson(reader, classOfT) : parseErrorBody(reader, classOfT);
+            boolean serverError = status >= 500;
+
+            if (result == null || StringUtils.isBlank(result.getError())) {
+                if (!success) {
+                    throw new UnexpectedStatusException("Unexpected status " + status + " from " + url, status);
                 }
-                throw new AuthenticationException(result.getErrorMessage());
+                return result;
             }
 
-            return result;
+            if ("UserMigratedException".equals(result.getCause()))
+                throw new UserMigratedException(result.getErrorMessage());
+            if (result.getError().equals("TooManyRequestsException")) {
+                throw new TooManyRequestsException(result.getErrorMessage(), parseRetryAfter(response.getHeader("Retry-After")));
+            }
+            if (result.getError().equals("ForbiddenOperationException")) {
+                throw new InvalidCredentialsException(result.getErrorMessage());
+            }
+            if (serverError) {
+                throw new AuthenticationUnavailableException(result.getErrorMessage());
+            }
+            throw new AuthenticationException(result.getErrorMessage());
+        } catch (BodyTooLargeException e) {
+            throw new ResponseTooLargeException("Response from " + url + " is larger than " + maxResponseSize + " bytes", maxResponseSize, e);
+        } catch (ZipException e) {
+            throw new MalformedResponseException("ZipException: Malformed compressed response from " + url, e);
         } catch (IOException e) {
             throw new AuthenticationUnavailableException("IOException: Cannot contact authentication server", e);
         } catch (IllegalStateException e) {
-            throw new AuthenticationUnavailableException("IllegalStateException: Cannot contact authentication server", e);
+            throw new MalformedResponseException("IllegalStateException: Malformed response from " + url, e);
         } catch (JsonParseException e) {
-            throw new AuthenticationUnavailableException("JsonParseException: Cannot contact authentication server", e);
+            // Gson wraps failures of the underlying stream; those are transport problems, not bad JSON.
+            if (e.getCause() instanceof BodyTooLargeException) {
+                throw new ResponseTooLargeException("Response from " + url + " is larger than " + maxResponseSize + " bytes", maxResponseSize, e.getCause());
+            }
+            if ((e.getCause() instanceof IOException) && !(e.getCause() instanceof MalformedJsonException) && !(e.getCause() instanceof ZipException)) {
+                throw new AuthenticationUnavailableException("IOException: Cannot contact authentication server", e.getCause());
+            }
+            throw new MalformedResponseException("JsonParseException: Malformed response from " + url, e);
+        } finally {
+            if (received != null) {
+                endpoint.recordTransfer(received.getCount(), decoded == null ? received.getCount() : decoded.getCount());
+            }
+            // Closing the decoder frees its inflater; the transport's body stream ignores the close.
+            IOUtils.closeQuietly(decoded);
+            IOUtils.closeQuietly(response);
         }
     }
 
+    /**
+     * Reads the body of an error status, which may be anything a proxy or load balancer put there. Only a failure
+     * of the stream itself is passed on; a body that isn't the expected JSON reads as no body at all.
+     */
+    private <T> T parseErrorBody(JsonReader reader, Class<T> classOfT) {
+        try {
+            return this.gson.fromJson(reader, classOfT);
+        } catch (JsonParseException e) {
+            if ((e.getCause() instanceof IOException) && !(e.getCause() instanceof MalformedJsonException)) {
+                throw e;
+            }
+            return null;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the delay in milliseconds, or -1 if the header is missing or unparseable
+     */
+    private static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return -1L;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            long at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0L, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
+    Gson getGson() {
+        return this.gson;
+    }
+
     public String getClientToken() {
         return this.clientToken;
     }
 
-    private static class GameProfileSerializer implements JsonSerializer<GameProfile>, JsonDeserializer<GameProfile> {
-        public GameProfile deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            JsonObject object = (JsonObject) json;
-            UUID id = object.has("id") ? (UUID) context.deserialize(object.get("id"), UUID.class) : null;
-            String name = object.has("name") ? object.getAsJsonPrimitive("name").getAsString() : null;
-            return new GameProfile(id, name);
+    /**
+     * Waits for a request future, rethrowing the {@link AuthenticationException} it failed with.
+     */
+    static <T> T getResult(Future<T> future) throws AuthenticationException {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof AuthenticationException) throw (AuthenticationException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AuthenticationUnavailableException(cause);
+        }
+    }
+
+    static Throwable unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * 1 while the named endpoint's breaker is open or probing, 0 when closed. Looks the breaker up each time, as
+     * {@link #setCircuitBreakerSettings} replaces them.
+     */
+    private final class CircuitGauge implements AuthMetrics.Gauge {
+        private final String endpoint;
+
+        private CircuitGauge(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public long getValue() {
+            CircuitBreaker breaker = circuitBreakers.get(this.endpoint);
+            return breaker == null || breaker.getState() == CircuitBreaker.State.CLOSED ? 0L : 1L;
+        }
+    }
+
+    private static final class RequestKey {
+        private final String url;
+        private final Class<?> type;
+
+        private RequestKey(URL url, Class<?> type) {
+            this.url = url.toExternalForm();
+            this.type = type;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RequestKey)) return false;
+            RequestKey that = (RequestKey) o;
+            return this.url.equals(that.url) && this.type == that.type;
         }
 
-        public JsonElement serialize(GameProfile src, Type typeOfSrc, JsonSerializationContext context) {
-            JsonObject result = new JsonObject();
-            if (src.getId() != null) result.add("id", context.serialize(src.getId()));
-            if (src.getName() != null) result.addProperty("name", src.getName());
-            return result;
+        public int hashCode() {
+            return 31 * this.url.hashCode() + this.type.hashCode();
+        }
+
+        public String toString() {
+            return this.url;
+        }
+    }
+
+    /**
+     * Form body of the shape {@code data=<json>} that our backend expects, with the JSON written by a
+     * {@link JsonWriter} rather than built up as a String first.
+     */
+    private final class JsonFormBody implements RequestBody {
+        private final Object input;
+        private final boolean stream;
+        private ByteArrayOutputStream buffer;
+
+        private JsonFormBody(Object input, boolean stream) {
+            this.input = input;
+            this.stream = stream;
+        }
+
+        public String getContentType() {
+            return "application/x-www-form-urlencoded";
+        }
+
+        public long getContentLength() throws IOException {
+            if (this.stream) {
+                return -1L;
+            }
+            if (this.buffer == null) {
+                this.buffer = new ByteArrayOutputStream(256);
+                write(this.buffer);
+            }
+            return this.buffer.size();
+        }
+
+        /**
+         * Gzips the body if it is buffered and at least {@code threshold} bytes.
+         *
+         * @return whether it was compressed
+         */
+        private boolean compress(long threshold) throws IOException {
+            if (this.stream || getContentLength() < threshold) {
+                return false;
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(this.buffer.size() / 4 + 64);
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            this.buffer.writeTo(gzip);
+            gzip.close();
+            this.buffer = compressed;
+            return true;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            if (this.buffer != null) {
+                this.buffer.writeTo(out);
+            } else {
+                write(out);
+            }
+        }
+
+        private void write(OutputStream out) throws IOException {
+            out.write(FORM_PREFIX);
+            Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            try {
+                YggdrasilAuthenticationService.this.gson.toJson(this.input, this.input.getClass(), jsonWriter);
+            } catch (JsonIOException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+            }
+            jsonWriter.flush();
         }
     }
-}
\ No newline at end of file
+}
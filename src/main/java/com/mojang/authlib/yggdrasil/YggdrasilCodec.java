@@ -0,0 +1,445 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.minecraft.MinecraftProfileTexture;
+import com.mojang.authlib.properties.Property;
+import com.mojang.authlib.properties.PropertyMap;
+import com.mojang.authlib.yggdrasil.request.AuthenticationRequest;
+import com.mojang.authlib.yggdrasil.request.HasJoinedBatchRequest;
+import com.mojang.authlib.yggdrasil.request.JoinMinecraftServerRequest;
+import com.mojang.authlib.yggdrasil.request.RefreshRequest;
+import com.mojang.authlib.yggdrasil.request.ValidateRequest;
+import com.mojang.authlib.yggdrasil.response.AuthenticationResponse;
+import com.mojang.authlib.yggdrasil.response.HasJoinedBatchResponse;
+import com.mojang.authlib.yggdrasil.response.HasJoinedMinecraftServerResponse;
+import com.mojang.authlib.yggdrasil.response.MinecraftProfilePropertiesResponse;
+import com.mojang.authlib.yggdrasil.response.ProfileSearchResultsResponse;
+import com.mojang.authlib.yggdrasil.response.RefreshResponse;
+import com.mojang.authlib.yggdrasil.response.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The one {@link Gson} every Yggdrasil service shares. Profiles, property maps, UUIDs and the requests this tree
+ * owns are read and written by streaming adapters, without building a JSON tree. Types bound by reflection have
+ * their adapters resolved here, once, rather than on the first request that needs them.
+ */
+public final class YggdrasilCodec {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final TypeAdapter<UUID> UUID_ADAPTER = new UuidAdapter();
+    private static final TypeAdapter<GameProfile> GAME_PROFILE_ADAPTER = new GameProfileAdapter();
+    private static final Class<?>[] REFLECTIVE_TYPES = {
+            Response.class, AuthenticationResponse.class, RefreshResponse.class, HasJoinedMinecraftServerResponse.class,
+            MinecraftProfilePropertiesResponse.class, HasJoinedBatchResponse.class,
+            AuthenticationRequest.class, RefreshRequest.class, ValidateRequest.class};
+    public static final Gson GSON = create();
+
+    private YggdrasilCodec() {
+    }
+
+    private static Gson create() {
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapter(UUID.class, UUID_ADAPTER)
+                .registerTypeAdapter(GameProfile.class, GAME_PROFILE_ADAPTER)
+                .registerTypeAdapter(Property.class, new PropertyAdapter())
+                .registerTypeAdapter(PropertyMap.class, new PropertyMapAdapter())
+                .registerTypeAdapter(ProfileSearchResultsResponse.class, new ProfileSearchResultsResponse.Serializer(GAME_PROFILE_ADAPTER))
+                .registerTypeAdapter(JoinMinecraftServerRequest.class, new JoinRequestAdapter())
+                .registerTypeAdapter(HasJoinedBatchRequest.class, new BatchRequestAdapter())
+                .create();
+        for (Class<?> type : REFLECTIVE_TYPES) {
+            gson.getAdapter(type);
+        }
+        return gson;
+    }
+
+    /**
+     * Reads just the textures out of a textures property payload, skipping texture types this version doesn't know.
+     *
+     * @return the textures, or null if the payload has none
+     */
+    public static Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> readTextures(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> textures = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!"textures".equals(in.nextName()) || in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                continue;
+            }
+            textures = new EnumMap<MinecraftProfileTexture.Type, MinecraftProfileTexture>(MinecraftProfileTexture.Type.class);
+            in.beginObject();
+            while (in.hasNext()) {
+                MinecraftProfileTexture.Type type = textureType(in.nextName());
+                if (type == null || in.peek() != JsonToken.BEGIN_OBJECT) {
+                    in.skipValue();
+                    continue;
+                }
+                textures.put(type, readTexture(in));
+            }
+            in.endObject();
+        }
+        in.endObject();
+        return textures;
+    }
+
+    private static MinecraftProfileTexture.Type textureType(String name) {
+        for (MinecraftProfileTexture.Type type : MinecraftProfileTexture.Type.values()) {
+            if (type.name().equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static MinecraftProfileTexture readTexture(JsonReader in) throws IOException {
+        String url = null;
+        Map<String, String> metadata = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("url".equals(name)) {
+                url = nextStringOrNull(in);
+            } else if ("metadata".equals(name) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                metadata = new HashMap<String, String>();
+                in.beginObject();
+                while (in.hasNext()) {
+                    metadata.put(in.nextName(), nextStringOrNull(in));
+                }
+                in.endObject();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new MinecraftProfileTexture(url, metadata);
+    }
+
+    /**
+     * Parses a UUID with or without dashes, like {@code UUIDTypeAdapter.fromString} but without a regex.
+     */
+    static UUID parseUuid(String value) {
+        if (value.length() == 32) {
+            return new UUID(parseHex(value, 0), parseHex(value, 16));
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new JsonSyntaxException("Invalid UUID " + value, e);
+        }
+    }
+
+    private static long parseHex(String value, int from) {
+        long result = 0L;
+        for (int i = from; i < from + 16; i++) {
+            int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0) {
+                throw new JsonSyntaxException("Invalid UUID " + value);
+            }
+            result = result << 4 | digit;
+        }
+        return result;
+    }
+
+    /**
+     * Formats a UUID without dashes, like {@code UUIDTypeAdapter.fromUUID}.
+     */
+    static String formatUuid(UUID id) {
+        char[] chars = new char[32];
+        writeHex(chars, 0, id.getMostSignificantBits());
+        writeHex(chars, 16, id.getLeastSignificantBits());
+        return new String(chars);
+    }
+
+    private static void writeHex(char[] chars, int from, long value) {
+        for (int i = from + 15; i >= from; i--) {
+            chars[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static UUID nextUuidOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return parseUuid(in.nextString());
+    }
+
+    private static final class UuidAdapter extends TypeAdapter<UUID> {
+        public void write(JsonWriter out, UUID value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(formatUuid(value));
+            }
+        }
+
+        public UUID read(JsonReader in) throws IOException {
+            return nextUuidOrNull(in);
+        }
+    }
+
+    /**
+     * Only the id and name; properties travel separately.
+     */
+    private static final class GameProfileAdapter extends TypeAdapter<GameProfile> {
+        public void write(JsonWriter out, GameProfile value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (value.getId() != null) {
+                out.name("id").value(formatUuid(value.getId()));
+            }
+            if (value.getName() != null) {
+                out.name("name").value(value.getName());
+            }
+            out.endObject();
+        }
+
+        public GameProfile read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            UUID id = null;
+            String name = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if ("id".equals(field)) {
+                    id = nextUuidOrNull(in);
+                } else if ("name".equals(field)) {
+                    name = nextStringOrNull(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new GameProfile(id, name);
+        }
+    }
+
+    private static final class PropertyAdapter extends TypeAdapter<Property> {
+        public void write(JsonWriter out, Property value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("name").value(value.getName());
+            out.name("value").value(value.getValue());
+            if (value.hasSignature()) {
+                out.name("signature").value(value.getSignature());
+            }
+            out.endObject();
+        }
+
+        public Property read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String name = null;
+            String value = null;
+            String signature = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if ("name".equals(field)) {
+                    name = nextStringOrNull(in);
+                } else if ("value".equals(field)) {
+                    value = nextStringOrNull(in);
+                } else if ("signature".equals(field)) {
+                    signature = nextStringOrNull(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Property(name, value, signature);
+        }
+    }
+
+    /**
+     * Writes the list form, {@code [{name, value, signature}]}, and reads both that and the legacy
+     * {@code {name: [value]}} form, like {@link PropertyMap.Serializer}.
+     */
+    private static final class PropertyMapAdapter extends TypeAdapter<PropertyMap> {
+        private final PropertyAdapter properties = new PropertyAdapter();
+
+        public void write(JsonWriter out, PropertyMap value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (Property property : value.values()) {
+                this.properties.write(out, property);
+            }
+            out.endArray();
+        }
+
+        public PropertyMap read(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            PropertyMap result = new PropertyMap();
+            if (token == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        result.put(name, new Property(name, in.nextString(), null));
+                    }
+                    in.endArray();
+                }
+                in.endObject();
+            } else {
+                in.beginArray();
+                while (in.hasNext()) {
+                    Property property = this.properties.read(in);
+                    if (property != null) {
+                        result.put(property.getName(), property);
+                    }
+                }
+                in.endArray();
+            }
+            return result;
+        }
+    }
+
+    private static final class JoinRequestAdapter extends TypeAdapter<JoinMinecraftServerRequest> {
+        public void write(JsonWriter out, JoinMinecraftServerRequest value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (value.accessToken != null) {
+                out.name("accessToken").value(value.accessToken);
+            }
+            if (value.selectedProfile != null) {
+                out.name("selectedProfile").value(formatUuid(value.selectedProfile));
+            }
+            if (value.serverId != null) {
+                out.name("serverId").value(value.serverId);
+            }
+            out.endObject();
+        }
+
+        public JoinMinecraftServerRequest read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            JoinMinecraftServerRequest result = new JoinMinecraftServerRequest();
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if ("accessToken".equals(field)) {
+                    result.accessToken = nextStringOrNull(in);
+                } else if ("selectedProfile".equals(field)) {
+                    result.selectedProfile = nextUuidOrNull(in);
+                } else if ("serverId".equals(field)) {
+                    result.serverId = nextStringOrNull(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return result;
+        }
+    }
+
+    private static final class BatchRequestAdapter extends TypeAdapter<HasJoinedBatchRequest> {
+        public void write(JsonWriter out, HasJoinedBatchRequest value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (value.checks != null) {
+                out.name("checks").beginArray();
+                for (HasJoinedBatchRequest.Check check : value.checks) {
+                    out.beginObject();
+                    if (check.username != null) {
+                        out.name("username").value(check.username);
+                    }
+                    if (check.serverId != null) {
+                        out.name("serverId").value(check.serverId);
+                    }
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        public HasJoinedBatchRequest read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<HasJoinedBatchRequest.Check> checks = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!"checks".equals(in.nextName()) || in.peek() != JsonToken.BEGIN_ARRAY) {
+                    in.skipValue();
+                    continue;
+                }
+                checks = new ArrayList<HasJoinedBatchRequest.Check>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    String username = null;
+                    String serverId = null;
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String field = in.nextName();
+                        if ("username".equals(field)) {
+                            username = nextStringOrNull(in);
+                        } else if ("serverId".equals(field)) {
+                            serverId = nextStringOrNull(in);
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    checks.add(new HasJoinedBatchRequest.Check(username, serverId));
+                }
+                in.endArray();
+            }
+            in.endObject();
+            return new HasJoinedBatchRequest(checks == null ? null : checks.toArray(new HasJoinedBatchRequest.Check[checks.size()]));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.http.QueryEncoder;
+import com.mojang.util.UUIDTypeAdapter;
+import org.apache.commons.lang3.Validate;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The URLs of the auth, session and profile servers. Every fixed route is parsed once when the endpoints are
+ * created; per-request URLs are assembled from the parsed parts without reparsing the base.
+ * <p>
+ * The auth and session servers may have replicas, given in the properties as a comma separated list of bases.
+ * URLs are always built against the first, primary, base; {@link ReplicaSet} moves them onto a replica.
+ */
+public final class YggdrasilEndpoints {
+    public static final String AUTH_URL = "auth.url";
+    public static final String SESSION_URL = "session.url";
+    public static final String PROFILES_URL = "profiles.url";
+    public static final YggdrasilEndpoints DEFAULT = new YggdrasilEndpoints("http://localhost/minecraft/auth/", "http://localhost/minecraft/session/", "https://api.mojang.com/profiles/");
+    private final List<URL> authReplicas;
+    private final List<URL> sessionReplicas;
+    private final URL authBase;
+    private final URL sessionBase;
+    private final URL profilesBase;
+    private final URL authenticate;
+    private final URL refresh;
+    private final URL validate;
+    private final URL invalidate;
+    private final URL signout;
+    private final URL join;
+    private final URL hasJoined;
+    private final URL hasJoinedBatch;
+    private final String hasJoinedPrefix;
+    private final String profilePath;
+    private final ConcurrentMap<String, URL> agentProfiles = new ConcurrentHashMap<String, URL>();
+
+    /**
+     * @throws IllegalArgumentException if a base is not a valid URL
+     */
+    public YggdrasilEndpoints(String authBase, String sessionBase, String profilesBase) {
+        this(Collections.singletonList(authBase), Collections.singletonList(sessionBase), profilesBase);
+    }
+
+    /**
+     * @param authBases    the auth server bases, primary first
+     * @param sessionBases the session server bases, primary first
+     * @throws IllegalArgumentException if a base is not a valid URL
+     */
+    public YggdrasilEndpoints(List<String> authBases, List<String> sessionBases, String profilesBase) {
+        this.authReplicas = parseAll(authBases);
+        this.sessionReplicas = parseAll(sessionBases);
+        this.authBase = this.authReplicas.get(0);
+        this.sessionBase = this.sessionReplicas.get(0);
+        this.profilesBase = parse(profilesBase);
+        this.authenticate = resolve(this.authBase, "authenticate");
+        this.refresh = resolve(this.authBase, "refresh");
+        this.validate = resolve(this.authBase, "validate");
+        this.invalidate = resolve(this.authBase, "invalidate");
+        this.signout = resolve(this.authBase, "signout");
+        this.join = resolve(this.sessionBase, "join");
+        this.hasJoined = resolve(this.sessionBase, "hasJoined");
+        this.hasJoinedBatch = resolve(this.sessionBase, "hasJoined/batch");
+        this.hasJoinedPrefix = this.hasJoined.getFile() + (this.hasJoined.getQuery() == null ? '?' : '&') + "serverId";
+        this.profilePath = this.sessionBase.getPath() + "profile/";
+    }
+
+    /**
+     * Reads {@link #AUTH_URL}, {@link #SESSION_URL} and {@link #PROFILES_URL}, falling back to {@link #DEFAULT} for
+     * any that are missing. The auth and session URLs may list replicas, separated by commas.
+     */
+    public static YggdrasilEndpoints fromProperties(Properties properties) {
+        return new YggdrasilEndpoints(
+                split(properties.getProperty(AUTH_URL, DEFAULT.authBase.toString())),
+                split(properties.getProperty(SESSION_URL, DEFAULT.sessionBase.toString())),
+                properties.getProperty(PROFILES_URL, DEFAULT.profilesBase.toString()).trim());
+    }
+
+    private static List<String> split(String bases) {
+        List<String> result = new ArrayList<String>();
+        for (String base : bases.split(",")) {
+            if (!base.trim().isEmpty()) {
+                result.add(base.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the auth server bases, primary first
+     */
+    public List<URL> getAuthReplicas() {
+        return this.authReplicas;
+    }
+
+    /**
+     * @return the session server bases, primary first
+     */
+    public List<URL> getSessionReplicas() {
+        return this.sessionReplicas;
+    }
+
+    public URL getAuthBase() {
+        return this.authBase;
+    }
+
+    public URL getSessionBase() {
+        return this.sessionBase;
+    }
+
+    public URL getProfilesBase() {
+        return this.profilesBase;
+    }
+
+    public URL getAuthenticateUrl() {
+        return this.authenticate;
+    }
+
+    public URL getRefreshUrl() {
+        return this.refresh;
+    }
+
+    public URL getValidateUrl() {
+        return this.validate;
+    }
+
+    public URL getInvalidateUrl() {
+        return this.invalidate;
+    }
+
+    public URL getSignoutUrl() {
+        return this.signout;
+    }
+
+    public URL getJoinUrl() {
+        return this.join;
+    }
+
+    public URL getHasJoinedUrl() {
+        return this.hasJoined;
+    }
+
+    /**
+     * @return the bulk login check endpoint, which takes many username and serverId pairs in one POST
+     */
+    public URL getHasJoinedBatchUrl() {
+        return this.hasJoinedBatch;
+    }
+
+    /**
+     * Builds the login check URL in one pass. The query is byte for byte what
+     * {@code concatenateURL(getHasJoinedUrl(), buildQuery(arguments))} produces for a {@code HashMap} holding the
+     * same two arguments, whose iteration order puts serverId first.
+     */
+    public URL getHasJoinedUrl(String username, String serverId) {
+        StringBuilder file = new StringBuilder(this.hasJoinedPrefix.length() + 80).append(this.hasJoinedPrefix);
+        if (serverId != null) {
+            QueryEncoder.append(file.append('='), serverId);
+        }
+        file.append("&username");
+        if (username != null) {
+            QueryEncoder.append(file.append('='), username);
+        }
+        return withFile(this.sessionBase, file.toString());
+    }
+
+    /**
+     * @param agentName lower case agent name
+     * @return the bulk name lookup URL for that agent, built on first use
+     */
+    public URL getProfilesUrl(String agentName) {
+        URL url = this.agentProfiles.get(agentName);
+        if (url == null) {
+            URL created = resolve(this.profilesBase, agentName);
+            url = this.agentProfiles.putIfAbsent(agentName, created);
+            if (url == null) {
+                url = created;
+            }
+        }
+        return url;
+    }
+
+    /**
+     * @return the session server URL for the properties of one profile
+     */
+    public URL getProfileUrl(UUID id, boolean unsigned) {
+        String file = new StringBuilder(this.profilePath.length() + 48).append(this.profilePath).append(UUIDTypeAdapter.fromUUID(id)).append("?unsigned=").append(unsigned).toString();
+        return withFile(this.sessionBase, file);
+    }
+
+    private static List<URL> parseAll(List<String> bases) {
+        Validate.notEmpty(bases);
+        List<URL> result = new ArrayList<URL>(bases.size());
+        for (String base : bases) {
+            result.add(parse(base));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static URL parse(String base) {
+        Validate.notEmpty(base);
+        try {
+            return new URL(base.endsWith("/") ? base : base + '/');
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid endpoint URL " + base, e);
+        }
+    }
+
+    private static URL resolve(URL base, String route) {
+        return withFile(base, base.getPath() + route);
+    }
+
+    private static URL withFile(URL base, String file) {
+        try {
+            // Reuses the protocol handler and host of the base instead of parsing a whole new spec.
+            return new URL(base.getProtocol(), base.getHost(), base.getPort(), file);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Protocol of " + base + " went missing", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        YggdrasilEndpoints that = (YggdrasilEndpoints) o;
+        // URL.equals resolves host names, so compare the strings.
+        return this.authReplicas.toString().equals(that.authReplicas.toString()) && this.sessionReplicas.toString().equals(that.sessionReplicas.toString()) && this.profilesBase.toString().equals(that.profilesBase.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        int result = this.authReplicas.toString().hashCode();
+        result = 31 * result + this.sessionReplicas.toString().hashCode();
+        result = 31 * result + this.profilesBase.toString().hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "YggdrasilEndpoints{auth=" + describe(this.authReplicas) + ", session=" + describe(this.sessionReplicas) + ", profiles=" + this.profilesBase + '}';
+    }
+
+    private static String describe(List<URL> replicas) {
+        return replicas.size() == 1 ? replicas.get(0).toString() : replicas.toString();
+    }
+}
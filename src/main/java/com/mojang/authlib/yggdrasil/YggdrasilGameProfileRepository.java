@@ -2,32 +2,80 @@ package com.mojang.authlib.yggdrasil;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.mojang.authlib.*;
-import com.mojang.authlib.exceptions.AuthenticationException;
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.exceptions.CircuitOpenException;
+import com.mojang.authlib.exceptions.TooManyRequestsException;
 import com.mojang.authlib.yggdrasil.response.ProfileSearchResultsResponse;
+import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.net.URL;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 public class YggdrasilGameProfileRepository
         implements GameProfileRepository {
     private static final Logger LOGGER = LogManager.getLogger();
-    private static final String BASE_URL = new Properties().getProperty("BASE_URL");//"http://localhost/minecraft/profile/";
-    private static final String SEARCH_PAGE_URL = new Properties().getProperty("SEARCH_PAGE_URL");//"http://localhost/minecraft/profile/list/";
     private static final int ENTRIES_PER_PAGE = 2;
+    private static final int PAGES_IN_FLIGHT = 4;
     private static final int MAX_FAIL_COUNT = 3;
-    private static final int DELAY_BETWEEN_PAGES = 100;
-    private static final int DELAY_BETWEEN_FAILURES = 750;
+    private static final long DEFAULT_RETRY_AFTER = 750L;
+    private static final long RETRY_BASE_DELAY = 100L;
+    private static final long RETRY_MAX_DELAY = 5000L;
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Authlib Profile Retry #%d").setDaemon(true).build());
     private final YggdrasilAuthenticationService authenticationService;
+    private volatile int entriesPerPage = ENTRIES_PER_PAGE;
+    private volatile int pagesInFlight = PAGES_IN_FLIGHT;
+    private final ConcurrentMap<String, CompletableFuture<GameProfile>> inFlightNames = new ConcurrentHashMap<String, CompletableFuture<GameProfile>>();
 
     public YggdrasilGameProfileRepository(YggdrasilAuthenticationService authenticationService) {
         this.authenticationService = authenticationService;
     }
 
+    public int getEntriesPerPage() {
+        return this.entriesPerPage;
+    }
+
+    public void setEntriesPerPage(int entriesPerPage) {
+        Validate.isTrue(entriesPerPage > 0, "entriesPerPage must be positive");
+        this.entriesPerPage = entriesPerPage;
+    }
+
+    public int getPagesInFlight() {
+        return this.pagesInFlight;
+    }
+
+    /**
+     * Sets how many pages of a single {@link #findProfilesByNames} call may be requested at the same time.
+     */
+    public void setPagesInFlight(int pagesInFlight) {
+        Validate.isTrue(pagesInFlight > 0, "pagesInFlight must be positive");
+        this.pagesInFlight = pagesInFlight;
+    }
+
+    /**
+     * Pages are requested concurrently, but the callback is still invoked only from the calling thread, one result
+     * at a time, and this method returns once every name has been reported.
+     */
     public void findProfilesByNames(String[] names, Agent agent, ProfileLookupCallback callback) {
         Set<String> criteria = Sets.newHashSet();
         for (String name : names) {
@@ -35,48 +83,226 @@ public class YggdrasilGameProfileRepository
                 criteria.add(name.toLowerCase());
             }
         }
-        int page = 0;
-        for (List<String> request : Iterables.partition(criteria, 2)) {
-            int failCount = 0;
-            boolean failed;
-            do {
-                failed = false;
-                try {
-                    ProfileSearchResultsResponse response = (ProfileSearchResultsResponse) authenticationService.makeRequest(HttpAuthenticationService.constantURL("https://api.mojang.com/profiles/" + agent.getName().toLowerCase()), request, ProfileSearchResultsResponse.class);
-                    failCount = 0;
-
-                    LOGGER.debug("Page {} returned {} results, parsing", new Object[]{Integer.valueOf(page), Integer.valueOf(response.getProfiles().length)});
-
-                    Set<String> missing = Sets.newHashSet(request);
-                    for (GameProfile profile : response.getProfiles()) {
-                        LOGGER.debug("Successfully looked up profile {}", new Object[]{profile});
-                        missing.remove(profile.getName().toLowerCase());
-                        callback.onProfileLookupSucceeded(profile);
+        String agentName = agent.getName().toLowerCase();
+        URL url = this.authenticationService.getEndpoints().getProfilesUrl(agentName);
+        PageLookup lookup = new PageLookup(url);
+        List<String> owned = Lists.newArrayList();
+        int pending = 0;
+
+        // A name some other concurrent lookup is already fetching is not requested again; we wait for its result.
+        for (String name : criteria) {
+            String key = agentName + '/' + name;
+            CompletableFuture<GameProfile> future = new CompletableFuture<GameProfile>();
+            CompletableFuture<GameProfile> existing = this.inFlightNames.putIfAbsent(key, future);
+            if (existing == null) {
+                owned.add(name);
+                lookup.owned.put(name, new OwnedName(key, future));
+            } else {
+                existing.whenComplete(new SharedName(name, lookup.results));
+                pending++;
+            }
+        }
+
+        try {
+            int maxInFlight = this.pagesInFlight;
+            Iterator<List<String>> pages = Iterables.partition(owned, this.entriesPerPage).iterator();
+            int page = 0;
+
+            while (pages.hasNext() || pending > 0) {
+                while (pending < maxInFlight && pages.hasNext()) {
+                    lookup.request(page++, pages.next(), 0, 0L);
+                    pending++;
+                }
+                LookupResult result = Uninterruptibles.takeUninterruptibly(lookup.results);
+                pending--;
+                result.report(callback);
+            }
+        } finally {
+            lookup.abandon();
+        }
+    }
+
+    private final class PageLookup {
+        private final URL url;
+        private final BlockingQueue<LookupResult> results = new LinkedBlockingQueue<LookupResult>();
+        private final Map<String, OwnedName> owned = Maps.newHashMap();
+        private final AtomicLong pausedUntil = new AtomicLong();
+
+        private PageLookup(URL url) {
+            this.url = url;
+        }
+
+        void request(int page, List<String> request, int failCount, long backoff) {
+            schedule(page, request, failCount, backoff, this.pausedUntil.get() - System.currentTimeMillis());
+        }
+
+        private void schedule(final int page, final List<String> request, final int failCount, final long backoff, long delay) {
+            if (delay > 0) {
+                RETRY_SCHEDULER.schedule(new Runnable() {
+                    public void run() {
+                        send(page, request, failCount, backoff);
                     }
-                    for (String name : missing) {
-                        LOGGER.debug("Couldn't find profile {}", new Object[]{name});
-                        callback.onProfileLookupFailed(new GameProfile(null, name), new ProfileNotFoundException("Server did not find the requested profile"));
+                }, delay, TimeUnit.MILLISECONDS);
+            } else {
+                send(page, request, failCount, backoff);
+            }
+        }
+
+        /**
+         * @param backoff the delay before this attempt, from which the next one is drawn
+         */
+        private void send(final int page, final List<String> request, final int failCount, final long backoff) {
+            authenticationService.makeRequestAsync(this.url, request, ProfileSearchResultsResponse.class).whenComplete(new BiConsumer<ProfileSearchResultsResponse, Throwable>() {
+                public void accept(ProfileSearchResultsResponse response, Throwable error) {
+                    if (error == null) {
+                        publish(request, response, null);
+                        PageLookup.this.results.add(new PageResult(page, request, response, null));
+                        return;
                     }
-                    try {
-                        Thread.sleep(100L);
-                    } catch (InterruptedException ignored) {
+                    Throwable cause = YggdrasilAuthenticationService.unwrap(error);
+                    if (cause instanceof CircuitOpenException || failCount + 1 >= MAX_FAIL_COUNT) {
+                        // Rate limiting counts too, or a server that keeps answering 429 would hold the lookup forever.
+                        Exception exception = cause instanceof Exception ? (Exception) cause : new AuthenticationUnavailableException(cause);
+                        publish(request, null, exception);
+                        PageLookup.this.results.add(new PageResult(page, request, null, exception));
+                    } else if (cause instanceof TooManyRequestsException) {
+                        // The server told us to slow down; hold back every page of this lookup, not just this one.
+                        long retryAfter = ((TooManyRequestsException) cause).getRetryAfter();
+                        long until = System.currentTimeMillis() + (retryAfter > 0 ? retryAfter : DEFAULT_RETRY_AFTER);
+                        long current;
+                        do {
+                            current = PageLookup.this.pausedUntil.get();
+                        } while (current < until && !PageLookup.this.pausedUntil.compareAndSet(current, until));
+                        LOGGER.debug("Page {} was rate limited, retrying in {} ms", new Object[]{Integer.valueOf(page), Long.valueOf(until - System.currentTimeMillis())});
+                        request(page, request, failCount + 1, backoff);
+                    } else {
+                        // Jittered, so pages that failed together don't retry together.
+                        long delay = CircuitBreaker.nextDelay(RETRY_BASE_DELAY, RETRY_MAX_DELAY, backoff);
+                        LOGGER.debug("Page {} failed, retrying in {} ms", new Object[]{Integer.valueOf(page), Long.valueOf(delay)});
+                        schedule(page, request, failCount + 1, delay, Math.max(delay, PageLookup.this.pausedUntil.get() - System.currentTimeMillis()));
                     }
-                } catch (AuthenticationException e) {
-                    failCount++;
-                    if (failCount == 3) {
-                        for (String name : request) {
-                            LOGGER.debug("Couldn't find profile {} because of a server error", new Object[]{name});
-                            callback.onProfileLookupFailed(new GameProfile(null, name), e);
-                        }
+                }
+            });
+        }
+
+        /**
+         * Hands the outcome of a page to lookups that are waiting on the same names.
+         */
+        private void publish(List<String> request, ProfileSearchResultsResponse response, Exception error) {
+            Map<String, GameProfile> found = Maps.newHashMap();
+            if (response != null && response.getProfiles() != null) {
+                for (GameProfile profile : response.getProfiles()) {
+                    found.put(profile.getName().toLowerCase(), profile);
+                }
+            }
+            for (String name : request) {
+                OwnedName owned = this.owned.get(name);
+                GameProfile profile = found.get(name);
+                if (error != null) {
+                    owned.completeExceptionally(error);
+                } else if (profile != null) {
+                    owned.complete(profile);
+                } else {
+                    owned.completeExceptionally(new ProfileNotFoundException("Server did not find the requested profile"));
+                }
+            }
+        }
+
+        /**
+         * Fails every name this lookup took on but never finished, e.g. because the callback threw, so that other
+         * lookups waiting on them are not left hanging.
+         */
+        void abandon() {
+            for (OwnedName owned : this.owned.values()) {
+                owned.completeExceptionally(new AuthenticationUnavailableException("Profile lookup was abandoned"));
+            }
+        }
+    }
+
+    private final class OwnedName {
+        private final String key;
+        private final CompletableFuture<GameProfile> future;
+
+        private OwnedName(String key, CompletableFuture<GameProfile> future) {
+            this.key = key;
+            this.future = future;
+        }
+
+        void complete(GameProfile profile) {
+            inFlightNames.remove(this.key, this.future);
+            this.future.complete(profile);
+        }
+
+        void completeExceptionally(Exception error) {
+            inFlightNames.remove(this.key, this.future);
+            this.future.completeExceptionally(error);
+        }
+    }
+
+    private static final class SharedName implements BiConsumer<GameProfile, Throwable> {
+        private final String name;
+        private final BlockingQueue<LookupResult> results;
+
+        private SharedName(String name, BlockingQueue<LookupResult> results) {
+            this.name = name;
+            this.results = results;
+        }
+
+        public void accept(final GameProfile profile, Throwable error) {
+            final Throwable cause = error == null ? null : YggdrasilAuthenticationService.unwrap(error);
+            this.results.add(new LookupResult() {
+                void report(ProfileLookupCallback callback) {
+                    if (profile != null) {
+                        LOGGER.debug("Successfully looked up profile {} through a concurrent lookup", new Object[]{profile});
+                        callback.onProfileLookupSucceeded(profile);
                     } else {
-                        try {
-                            Thread.sleep(750L);
-                        } catch (InterruptedException ignored) {
-                        }
-                        failed = true;
+                        LOGGER.debug("Couldn't find profile {}", new Object[]{SharedName.this.name});
+                        callback.onProfileLookupFailed(new GameProfile(null, SharedName.this.name), cause instanceof Exception ? (Exception) cause : new AuthenticationUnavailableException(cause));
                     }
                 }
-            } while (failed);
+            });
+        }
+    }
+
+    private abstract static class LookupResult {
+        abstract void report(ProfileLookupCallback callback);
+    }
+
+    private static final class PageResult extends LookupResult {
+        private final int page;
+        private final List<String> request;
+        private final ProfileSearchResultsResponse response;
+        private final Exception error;
+
+        private PageResult(int page, List<String> request, ProfileSearchResultsResponse response, Exception error) {
+            this.page = page;
+            this.request = request;
+            this.response = response;
+            this.error = error;
+        }
+
+        @Override
+        void report(ProfileLookupCallback callback) {
+            if (this.error != null) {
+                for (String name : this.request) {
+                    LOGGER.debug("Couldn't find profile {} because of a server error", new Object[]{name});
+                    callback.onProfileLookupFailed(new GameProfile(null, name), this.error);
+                }
+                return;
+            }
+            GameProfile[] profiles = this.response == null || this.response.getProfiles() == null ? new GameProfile[0] : this.response.getProfiles();
+            LOGGER.debug("Page {} returned {} results, parsing", new Object[]{Integer.valueOf(this.page), Integer.valueOf(profiles.length)});
+
+            Set<String> missing = Sets.newHashSet(this.request);
+            for (GameProfile profile : profiles) {
+                LOGGER.debug("Successfully looked up profile {}", new Object[]{profile});
+                missing.remove(profile.getName().toLowerCase());
+                callback.onProfileLookupSucceeded(profile);
+            }
+            for (String name : missing) {
+                LOGGER.debug("Couldn't find profile {}", new Object[]{name});
+                callback.onProfileLookupFailed(new GameProfile(null, name), new ProfileNotFoundException("Server did not find the requested profile"));
+            }
         }
     }
 }
@@ -1,67 +1,90 @@
 package com.mojang.authlib.yggdrasil;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonParseException;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.gson.stream.JsonReader;
 import com.mojang.authlib.GameProfile;
-import com.mojang.authlib.HttpAuthenticationService;
 import com.mojang.authlib.exceptions.AuthenticationException;
 import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.metrics.AuthMetrics;
 import com.mojang.authlib.minecraft.HttpMinecraftSessionService;
 import com.mojang.authlib.minecraft.InsecureTextureException;
 import com.mojang.authlib.minecraft.MinecraftProfileTexture;
 import com.mojang.authlib.properties.Property;
+import com.mojang.authlib.properties.PropertyMap;
+import com.mojang.authlib.properties.SignatureVerifier;
 import com.mojang.authlib.yggdrasil.request.JoinMinecraftServerRequest;
 import com.mojang.authlib.yggdrasil.response.HasJoinedMinecraftServerResponse;
 import com.mojang.authlib.yggdrasil.response.MinecraftProfilePropertiesResponse;
-import com.mojang.authlib.yggdrasil.response.MinecraftTexturesPayload;
 import com.mojang.authlib.yggdrasil.response.Response;
-import com.mojang.util.UUIDTypeAdapter;
 import org.apache.commons.codec.Charsets;
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
 import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 public class YggdrasilMinecraftSessionService
         extends HttpMinecraftSessionService {
     private static final String[] WHITELISTED_DOMAINS = new String[]{"localhost", ".max107.ru"};
+    private static final DomainWhitelist DEFAULT_WHITELIST = new DomainWhitelist(WHITELISTED_DOMAINS);
     private static final Logger LOGGER = LogManager.getLogger();
-    private static final String BASE_URL = "http://localhost/minecraft/session/";
-    private static final URL JOIN_URL = HttpAuthenticationService.constantURL("http://localhost/minecraft/session/join");
-    private static final URL CHECK_URL = HttpAuthenticationService.constantURL("http://localhost/minecraft/session/hasJoined");
-    private final PublicKey publicKey;
-    private final Gson gson = new GsonBuilder().registerTypeAdapter(UUID.class, new UUIDTypeAdapter()).create();
-    private final LoadingCache<GameProfile, GameProfile> insecureProfiles = (LoadingCache<GameProfile, GameProfile>)CacheBuilder.newBuilder().expireAfterWrite(6L, TimeUnit.HOURS).build((CacheLoader)new CacheLoader<GameProfile, GameProfile>() {
-        public GameProfile load(final GameProfile key) throws Exception {
-            return YggdrasilMinecraftSessionService.this.fillGameProfile(key, false);
-        }
-    });
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_BATCH_WINDOW = 20L;
+    private final SignatureVerifier signatureVerifier;
+    private final Cache<GameProfile, ProfileSnapshot> insecureProfiles = CacheBuilder.newBuilder().expireAfterWrite(6L, TimeUnit.HOURS).recordStats().build();
+    private final Cache<UUID, ProfileSnapshot> secureProfiles = CacheBuilder.newBuilder().expireAfterWrite(1L, TimeUnit.HOURS).maximumSize(10000L).recordStats().build();
+    private final Cache<TexturesKey, Map<MinecraftProfileTexture.Type, MinecraftProfileTexture>> decodedTextures = CacheBuilder.newBuilder().expireAfterAccess(1L, TimeUnit.HOURS).maximumSize(4096L).recordStats().build();
+    private final ProfileRegistry profileRegistry = new ProfileRegistry(10000L, TimeUnit.HOURS.toMillis(1L));
+    private volatile PersistentProfileCache persistentCache;
+    private volatile DomainWhitelist whitelist = DEFAULT_WHITELIST;
+    private volatile HasJoinedBatcher hasJoinedBatcher = new HasJoinedBatcher(this, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_WINDOW);
 
     protected YggdrasilMinecraftSessionService(YggdrasilAuthenticationService authenticationService) {
         super(authenticationService);
+        PublicKey publicKey;
         try {
             X509EncodedKeySpec spec = new X509EncodedKeySpec(IOUtils.toByteArray(YggdrasilMinecraftSessionService.class.getResourceAsStream("/yggdrasil_session_pubkey.der")));
             KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            this.publicKey = keyFactory.generatePublic(spec);
+            publicKey = keyFactory.generatePublic(spec);
         } catch (Exception e) {
             throw new Error("Missing/invalid yggdrasil public key!");
         }
+        this.signatureVerifier = new SignatureVerifier(publicKey);
+        AuthMetrics metrics = authenticationService.getMetrics();
+        metrics.registerCache("session.insecureProfiles", this.insecureProfiles);
+        metrics.registerCache("session.secureProfiles", this.secureProfiles);
+        metrics.registerCache("session.textures", this.decodedTextures);
+        metrics.registerCache("session.profileRegistry", this.profileRegistry.getCache());
+        metrics.registerGauge("session.internedProperties", new AuthMetrics.Gauge() {
+            public long getValue() {
+                return profileRegistry.getInternedPropertyCount();
+            }
+        });
     }
 
     public void joinServer(GameProfile profile, String authenticationToken, String serverId)
@@ -71,116 +94,378 @@ public class YggdrasilMinecraftSessionService
         request.selectedProfile = profile.getId();
         request.serverId = serverId;
 
-        getAuthenticationService().makeRequest(JOIN_URL, request, Response.class);
+        getAuthenticationService().makeRequest(getAuthenticationService().getEndpoints().getJoinUrl(), request, Response.class);
     }
 
     public GameProfile hasJoinedServer(GameProfile user, String serverId)
             throws AuthenticationUnavailableException {
-        Map<String, Object> arguments = new HashMap();
+        try {
+            return YggdrasilAuthenticationService.getResult(hasJoinedServer(user, serverId, YggdrasilAuthenticationService.DIRECT_EXECUTOR));
+        } catch (AuthenticationUnavailableException e) {
+            throw e;
+        } catch (AuthenticationException e) {
+            throw new AuthenticationUnavailableException(e);
+        }
+    }
 
-        arguments.put("username", user.getName());
-        arguments.put("serverId", serverId);
+    /**
+     * Asynchronous {@link #hasJoinedServer(GameProfile, String)}. The future completes with null if the user has
+     * not joined, and fails with {@link AuthenticationUnavailableException} if the server could not be reached.
+     */
+    public CompletableFuture<GameProfile> hasJoinedServerAsync(GameProfile user, String serverId) {
+        return hasJoinedServer(user, serverId, getAuthenticationService().getExecutor());
+    }
 
-        URL url = HttpAuthenticationService.concatenateURL(CHECK_URL, HttpAuthenticationService.buildQuery(arguments));
-        try {
-            HasJoinedMinecraftServerResponse response = (HasJoinedMinecraftServerResponse) getAuthenticationService().makeRequest(url, null, HasJoinedMinecraftServerResponse.class);
-            if ((response != null) && (response.getId() != null)) {
-                GameProfile result = new GameProfile(response.getId(), user.getName());
-                if (response.getProperties() != null) {
-                    result.getProperties().putAll(response.getProperties());
+    /**
+     * Like {@link #hasJoinedServerAsync(GameProfile, String)}, but the check may wait briefly to be sent along with
+     * others in one request to the bulk endpoint. Meant for bursts of logins, such as everyone reconnecting after a
+     * restart; servers without a bulk endpoint get one request per check as usual.
+     */
+    public CompletableFuture<GameProfile> hasJoinedServerBatched(GameProfile user, String serverId) {
+        return this.hasJoinedBatcher.submit(user, serverId);
+    }
+
+    /**
+     * Sets how {@link #hasJoinedServerBatched(GameProfile, String)} batches: a batch is sent once it holds
+     * {@code maxBatchSize} checks, or {@code window} milliseconds after its first check arrived.
+     */
+    public void setHasJoinedBatching(int maxBatchSize, long window) {
+        Validate.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+        Validate.isTrue(window >= 0, "window must not be negative");
+        this.hasJoinedBatcher = new HasJoinedBatcher(this, maxBatchSize, window);
+    }
+
+    CompletableFuture<GameProfile> hasJoinedServer(final GameProfile user, String serverId, Executor executor) {
+        URL url = getAuthenticationService().getEndpoints().getHasJoinedUrl(user.getName(), serverId);
+        final CompletableFuture<GameProfile> result = new CompletableFuture<GameProfile>();
+        getAuthenticationService().makeRequestAsync(url, null, HasJoinedMinecraftServerResponse.class, executor).whenComplete(new BiConsumer<HasJoinedMinecraftServerResponse, Throwable>() {
+            public void accept(HasJoinedMinecraftServerResponse response, Throwable error) {
+                if (error != null) {
+                    Throwable cause = YggdrasilAuthenticationService.unwrap(error);
+                    if ((cause instanceof AuthenticationException) && !(cause instanceof AuthenticationUnavailableException)) {
+                        result.complete(null);
+                    } else {
+                        result.completeExceptionally(cause);
+                    }
+                    return;
                 }
-                return result;
+                result.complete(joinedProfile(user, response));
             }
+        });
+        return result;
+    }
+
+    /**
+     * @return the profile a hasJoined response vouches for, or null if the user has not joined
+     */
+    GameProfile joinedProfile(GameProfile user, HasJoinedMinecraftServerResponse response) {
+        if ((response == null) || (response.getId() == null)) {
             return null;
-        } catch (AuthenticationUnavailableException e) {
-            throw e;
-        } catch (AuthenticationException e) {
         }
-        return null;
+        return this.profileRegistry.register(response.getId(), user.getName(), values(response.getProperties())).toGameProfile();
+    }
+
+    private static Collection<Property> values(PropertyMap properties) {
+        return properties == null ? Collections.<Property>emptyList() : properties.values();
     }
 
+    /**
+     * Decoded payloads are memoized by property value, signature and whitelist, so repeated calls for the same
+     * player return the same immutable, already whitelisted map without decoding again.
+     */
     public Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> getTextures(GameProfile profile, boolean requireSecure) {
         Property textureProperty = (Property) Iterables.getFirst(profile.getProperties().get("textures"), null);
-        if (textureProperty == null) {
-            return new HashMap();
+        if (textureProperty == null || textureProperty.getValue() == null) {
+            return ImmutableMap.of();
         }
         if (requireSecure) {
             if (!textureProperty.hasSignature()) {
                 LOGGER.debug("Signature is missing from textures payload");
                 throw new InsecureTextureException("Signature is missing from textures payload");
             }
-            if (!textureProperty.isSignatureValid(this.publicKey)) {
+            if (!this.signatureVerifier.verify(textureProperty)) {
                 LOGGER.debug("Textures payload has been tampered with (signature invalid)");
                 throw new InsecureTextureException("Textures payload has been tampered with (signature invalid)");
             }
         }
-        MinecraftTexturesPayload result;
+        // Read once, so a map checked against a whitelist is only ever cached under that whitelist.
+        DomainWhitelist whitelist = this.whitelist;
+        TexturesKey key = new TexturesKey(textureProperty.getValue(), textureProperty.getSignature(), whitelist);
+        Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> textures = this.decodedTextures.getIfPresent(key);
+        if (textures == null) {
+            textures = decodeTextures(textureProperty.getValue(), whitelist);
+            this.decodedTextures.put(key, textures);
+        }
+        return textures;
+    }
+
+    private Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> decodeTextures(String value, DomainWhitelist whitelist) {
+        Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> textures;
         try {
-            String json = new String(Base64.decodeBase64(textureProperty.getValue()), Charsets.UTF_8);
-            result = (MinecraftTexturesPayload) this.gson.fromJson(json, MinecraftTexturesPayload.class);
-        } catch (JsonParseException e) {
+            JsonReader reader = new JsonReader(new InputStreamReader(new Base64InputStream(new AsciiInputStream(value)), Charsets.UTF_8));
+            textures = YggdrasilCodec.readTextures(reader);
+        } catch (IOException e) {
             LOGGER.debug("Could not decode textures payload", e);
-            return new HashMap();
+            return ImmutableMap.of();
+        } catch (RuntimeException e) {
+            // Values of the wrong type, such as a number where an object belongs.
+            LOGGER.debug("Could not decode textures payload", e);
+            return ImmutableMap.of();
         }
-        if (result.getTextures() == null) {
-            return new HashMap();
+        if (textures == null) {
+            return ImmutableMap.of();
         }
-        for (Map.Entry<MinecraftProfileTexture.Type, MinecraftProfileTexture> entry : result.getTextures().entrySet()) {
-            if (!isWhitelistedDomain(((MinecraftProfileTexture) entry.getValue()).getUrl())) {
+        for (Map.Entry<MinecraftProfileTexture.Type, MinecraftProfileTexture> entry : textures.entrySet()) {
+            if (!whitelist.isWhitelisted(((MinecraftProfileTexture) entry.getValue()).getUrl())) {
                 LOGGER.debug("Textures payload has been tampered with (non-whitelisted domain)");
-                return new HashMap();
+                return ImmutableMap.of();
             }
         }
-        return result.getTextures();
+        return Maps.immutableEnumMap(textures);
     }
 
     public GameProfile fillProfileProperties(GameProfile profile, boolean requireSecure) {
+        return Futures.getUnchecked(fillProfileProperties(profile, requireSecure, YggdrasilAuthenticationService.DIRECT_EXECUTOR));
+    }
+
+    /**
+     * Asynchronous {@link #fillProfileProperties(GameProfile, boolean)}. Like the blocking method, lookup failures
+     * complete the future with the profile as it was given.
+     */
+    public CompletableFuture<GameProfile> fillProfilePropertiesAsync(GameProfile profile, boolean requireSecure) {
+        return fillProfileProperties(profile, requireSecure, getAuthenticationService().getExecutor());
+    }
+
+    private CompletableFuture<GameProfile> fillProfileProperties(final GameProfile profile, boolean requireSecure, Executor executor) {
         if (profile.getId() == null) {
-            return profile;
+            return CompletableFuture.completedFuture(profile);
         }
         if (!requireSecure) {
-            return (GameProfile) this.insecureProfiles.getUnchecked(profile);
+            ProfileSnapshot cached = this.insecureProfiles.getIfPresent(profile);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(fillFrom(profile, cached));
+            }
+            cached = loadPersistedProfile(profile);
+            if (cached != null) {
+                this.insecureProfiles.put(profile, cached);
+                return CompletableFuture.completedFuture(fillFrom(profile, cached));
+            }
+            return lookUpProperties(profile, false, executor).thenApply(new Function<GameProfile, GameProfile>() {
+                public GameProfile apply(GameProfile result) {
+                    if (isFilled(profile, result)) {
+                        YggdrasilMinecraftSessionService.this.insecureProfiles.put(profile, YggdrasilMinecraftSessionService.this.profileRegistry.register(result));
+                        persistProfile(result);
+                    }
+                    return result;
+                }
+            });
+        }
+        ProfileSnapshot cached = this.secureProfiles.getIfPresent(profile.getId());
+        if (cached != null) {
+            return CompletableFuture.completedFuture(fillFrom(profile, cached));
+        }
+        return lookUpProperties(profile, true, executor).thenApply(new Function<GameProfile, GameProfile>() {
+            public GameProfile apply(GameProfile result) {
+                if (isFilled(profile, result) && hasValidSignatures(result)) {
+                    YggdrasilMinecraftSessionService.this.secureProfiles.put(profile.getId(), YggdrasilMinecraftSessionService.this.profileRegistry.register(result));
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Gives the profile that was asked about the cached properties, as a lookup over the network would have, and
+     * returns a profile of its own to the caller so nothing it does reaches the cache.
+     */
+    private static GameProfile fillFrom(GameProfile profile, ProfileSnapshot cached) {
+        cached.getProperties().copyInto(profile.getProperties());
+        return cached.toGameProfile();
+    }
+
+    /**
+     * A failed lookup hands back the profile it was given, and one the server had nothing for comes back empty;
+     * neither is worth remembering.
+     */
+    private static boolean isFilled(GameProfile profile, GameProfile result) {
+        return result != profile && !result.getProperties().isEmpty();
+    }
+
+    /**
+     * Drops the cached signed properties of a profile, so the next secure lookup goes to the server.
+     */
+    public void invalidateSecureProfile(UUID id) {
+        this.secureProfiles.invalidate(id);
+    }
+
+    public void invalidateSecureProfiles() {
+        this.secureProfiles.invalidateAll();
+    }
+
+    private boolean hasValidSignatures(GameProfile profile) {
+        if (!this.signatureVerifier.verifyAll(profile.getProperties())) {
+            LOGGER.debug("Not caching signed properties of " + profile + " as they failed verification");
+            return false;
         }
-        return fillGameProfile(profile, true);
+        return true;
     }
 
-    protected GameProfile fillGameProfile(GameProfile profile, boolean requireSecure) {
+    /**
+     * Sets a disk-backed store that unsigned profile lookups fall back to before going over the network, and that
+     * successful lookups are written to. Pass null to disable it.
+     */
+    public void setPersistentCache(PersistentProfileCache persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+
+    /**
+     * The canonical profiles behind every profile this service hands out. Its snapshots can be held instead of
+     * {@link GameProfile}s to share the properties of a player rather than copy them.
+     */
+    public ProfileRegistry getProfileRegistry() {
+        return this.profileRegistry;
+    }
+
+    public DomainWhitelist getWhitelist() {
+        return this.whitelist;
+    }
+
+    /**
+     * Replaces the domains texture URLs may point at. Textures decoded under the old whitelist are never handed out
+     * again, and are dropped from the cache.
+     */
+    public void setWhitelist(DomainWhitelist whitelist) {
+        Validate.notNull(whitelist);
+        this.whitelist = whitelist;
+        this.decodedTextures.invalidateAll();
+    }
+
+    private ProfileSnapshot loadPersistedProfile(GameProfile profile) {
+        PersistentProfileCache persistentCache = this.persistentCache;
+        if (persistentCache == null) {
+            return null;
+        }
         try {
-            URL url = HttpAuthenticationService.constantURL("http://localhost/minecraft/session/profile/" + UUIDTypeAdapter.fromUUID(profile.getId()));
-            url = HttpAuthenticationService.concatenateURL(url, "unsigned=" + (!requireSecure));
-            MinecraftProfilePropertiesResponse response = (MinecraftProfilePropertiesResponse) getAuthenticationService().makeRequest(url, null, MinecraftProfilePropertiesResponse.class);
-            if (response == null) {
-                LOGGER.debug("Couldn't fetch profile properties for " + profile + " as the profile does not exist");
-                return profile;
-            }
-            GameProfile result = new GameProfile(response.getId(), response.getName());
-            result.getProperties().putAll(response.getProperties());
-            profile.getProperties().putAll(response.getProperties());
-            LOGGER.debug("Successfully fetched profile properties for " + profile);
-            return result;
-        } catch (AuthenticationException e) {
-            LOGGER.debug("Couldn't look up profile properties for " + profile, e);
+            GameProfile persisted = persistentCache.get(profile.getId());
+            return persisted == null ? null : this.profileRegistry.register(persisted);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't read profile " + profile + " from persistent cache", e);
+            return null;
+        }
+    }
+
+    private void persistProfile(GameProfile profile) {
+        PersistentProfileCache persistentCache = this.persistentCache;
+        if (persistentCache == null || profile.getId() == null) {
+            return;
+        }
+        try {
+            persistentCache.put(profile);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't write profile " + profile + " to persistent cache", e);
         }
-        return profile;
+    }
+
+    /**
+     * Blocking lookups go through {@link #fillGameProfile(GameProfile, boolean)} and asynchronous ones through
+     * {@link #fillGameProfileAsync}, so subclasses overriding either still serve {@link #fillProfileProperties}.
+     */
+    private CompletableFuture<GameProfile> lookUpProperties(GameProfile profile, boolean requireSecure, Executor executor) {
+        if (executor == YggdrasilAuthenticationService.DIRECT_EXECUTOR) {
+            return CompletableFuture.completedFuture(fillGameProfile(profile, requireSecure));
+        }
+        return fillGameProfileAsync(profile, requireSecure);
+    }
+
+    protected GameProfile fillGameProfile(GameProfile profile, boolean requireSecure) {
+        return Futures.getUnchecked(fillGameProfile(profile, requireSecure, YggdrasilAuthenticationService.DIRECT_EXECUTOR));
+    }
+
+    protected CompletableFuture<GameProfile> fillGameProfileAsync(GameProfile profile, boolean requireSecure) {
+        return fillGameProfile(profile, requireSecure, getAuthenticationService().getExecutor());
+    }
+
+    private CompletableFuture<GameProfile> fillGameProfile(final GameProfile profile, boolean requireSecure, Executor executor) {
+        URL url = getAuthenticationService().getEndpoints().getProfileUrl(profile.getId(), !requireSecure);
+        return getAuthenticationService().makeRequestAsync(url, null, MinecraftProfilePropertiesResponse.class, executor).handle(new BiFunction<MinecraftProfilePropertiesResponse, Throwable, GameProfile>() {
+            public GameProfile apply(MinecraftProfilePropertiesResponse response, Throwable error) {
+                if (error != null) {
+                    Throwable cause = YggdrasilAuthenticationService.unwrap(error);
+                    // Only a failed or abandoned lookup leaves the profile as it was; anything else is a bug.
+                    if (!(cause instanceof AuthenticationException) && !(cause instanceof TimeoutException)) {
+                        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(cause);
+                    }
+                    LOGGER.debug("Couldn't look up profile properties for " + profile, cause);
+                    return profile;
+                }
+                if (response == null) {
+                    LOGGER.debug("Couldn't fetch profile properties for " + profile + " as the profile does not exist");
+                    return profile;
+                }
+                ProfileSnapshot snapshot = YggdrasilMinecraftSessionService.this.profileRegistry.register(response.getId(), response.getName(), values(response.getProperties()));
+                GameProfile result = snapshot.toGameProfile();
+                snapshot.getProperties().copyInto(profile.getProperties());
+                LOGGER.debug("Successfully fetched profile properties for " + profile);
+                return result;
+            }
+        });
     }
 
     public YggdrasilAuthenticationService getAuthenticationService() {
         return (YggdrasilAuthenticationService) super.getAuthenticationService();
     }
 
-    private static boolean isWhitelistedDomain(String url) {
-        URI uri = null;
-        try {
-            uri = new URI(url);
-        } catch (URISyntaxException e) {
-            throw new IllegalArgumentException("Invalid URL '" + url + "'");
-        }
-        String domain = uri.getHost();
-        for (int i = 0; i < WHITELISTED_DOMAINS.length; i++) {
-            if (domain.endsWith(WHITELISTED_DOMAINS[i])) {
-                return true;
+    private static final class TexturesKey {
+        private final String value;
+        private final String signature;
+        private final DomainWhitelist whitelist;
+
+        private TexturesKey(String value, String signature, DomainWhitelist whitelist) {
+            this.value = value;
+            this.signature = signature;
+            this.whitelist = whitelist;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TexturesKey)) return false;
+            TexturesKey that = (TexturesKey) o;
+            return this.whitelist == that.whitelist && this.value.equals(that.value) && (this.signature == null ? that.signature == null : this.signature.equals(that.signature));
+        }
+
+        public int hashCode() {
+            return 31 * (31 * this.value.hashCode() + (this.signature == null ? 0 : this.signature.hashCode())) + System.identityHashCode(this.whitelist);
+        }
+    }
+
+    /**
+     * Feeds the characters of a base64 string to the decoder without copying them into a byte array first.
+     */
+    private static final class AsciiInputStream extends InputStream {
+        private final String source;
+        private int position;
+
+        private AsciiInputStream(String source) {
+            this.source = source;
+        }
+
+        public int read() {
+            return this.position < this.source.length() ? this.source.charAt(this.position++) & 0xFF : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int remaining = this.source.length() - this.position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = Math.min(len, remaining);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) this.source.charAt(this.position++);
             }
+            return count;
         }
-        return false;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,5 @@
 package com.mojang.authlib.yggdrasil;
 
-import com.google.gson.GsonBuilder;
 import com.mojang.authlib.*;
 import com.mojang.authlib.exceptions.AuthenticationException;
 import com.mojang.authlib.exceptions.InvalidCredentialsException;
@@ -13,27 +12,25 @@ import com.mojang.authlib.yggdrasil.response.Response;
 import com.mojang.authlib.yggdrasil.response.User;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.net.URL;
 import java.util.Arrays;
 import java.util.Map;
 
 public class YggdrasilUserAuthentication
         extends HttpUserAuthentication {
     private static final Logger LOGGER = LogManager.getLogger();
-    private static final String BASE_URL = "http://localhost/minecraft/auth/";
-    private static final URL ROUTE_AUTHENTICATE = HttpAuthenticationService.constantURL("http://localhost/minecraft/auth/authenticate");
-    private static final URL ROUTE_REFRESH = HttpAuthenticationService.constantURL("http://localhost/minecraft/auth/refresh");
-    private static final URL ROUTE_VALIDATE = HttpAuthenticationService.constantURL("http://localhost/minecraft/auth/validate");
-    private static final URL ROUTE_INVALIDATE = HttpAuthenticationService.constantURL("http://localhost/minecraft/auth/invalidate");
-    private static final URL ROUTE_SIGNOUT = HttpAuthenticationService.constantURL("http://localhost/minecraft/auth/signout");
     private static final String STORAGE_KEY_ACCESS_TOKEN = "accessToken";
+    private static final String STORAGE_KEY_TOKEN_OBTAINED_AT = "accessTokenObtainedAt";
     private final Agent agent;
     private GameProfile[] profiles;
     private String accessToken;
     private boolean isOnline;
+    private long tokenObtainedAt = -1L;
+    private long tokenLifetime;
+    private long refreshMargin;
 
     public YggdrasilUserAuthentication(YggdrasilAuthenticationService authenticationService, Agent agent) {
         super(authenticationService);
@@ -71,10 +68,9 @@ public class YggdrasilUserAuthentication
         AuthenticationRequest request = new AuthenticationRequest(this, getUsername(), getPassword());
         LOGGER.info(getUsername());
         LOGGER.info(getPassword());
-        GsonBuilder builder = new GsonBuilder();
-        LOGGER.info(builder.create().toJson(request));
+        LOGGER.info(YggdrasilCodec.GSON.toJson(request));
 
-        AuthenticationResponse response = (AuthenticationResponse) getAuthenticationService().makeRequest(ROUTE_AUTHENTICATE, request, AuthenticationResponse.class);
+        AuthenticationResponse response = (AuthenticationResponse) getAuthenticationService().makeRequest(getAuthenticationService().getEndpoints().getAuthenticateUrl(), request, AuthenticationResponse.class);
 //        TODO uncomment me and fix it
 //        if (!response.getClientToken().equals(getAuthenticationService().getClientToken())) {
 //            throw new AuthenticationException("Server requested we change our client token. Don't know how to handle this!");
@@ -92,6 +88,7 @@ public class YggdrasilUserAuthentication
         }
         this.isOnline = true;
         this.accessToken = response.getAccessToken();
+        tokenIssued();
         this.profiles = response.getAvailableProfiles();
         setSelectedProfile(response.getSelectedProfile());
         getModifiableUserProperties().clear();
@@ -121,16 +118,36 @@ public class YggdrasilUserAuthentication
             throw new InvalidCredentialsException("Invalid access token");
         }
         LOGGER.info("Logging in with access token");
-        if (checkTokenValidity()) {
+        if (isTokenNearExpiry()) {
+            LOGGER.debug("Refreshing straight away as the access token is about to expire.");
+        } else if (getAuthenticationService().getTokenValidationCache().isValid(getAuthenticatedToken())) {
+            LOGGER.debug("Skipping validate and refresh calls as the access token was validated recently.");
+            this.isOnline = true;
+            return;
+        } else if (checkTokenValidity()) {
             LOGGER.debug("Skipping refresh call as we're safely logged in.");
             this.isOnline = true;
             return;
         }
+        refreshAccessToken();
+    }
+
+    /**
+     * Trades the current access token for a new one, without checking first whether it is still valid.
+     */
+    public void refreshAccessToken()
+            throws AuthenticationException {
+        if (StringUtils.isBlank(getAuthenticatedToken())) {
+            throw new InvalidCredentialsException("Invalid access token");
+        }
+        TokenValidationCache validatedTokens = getAuthenticationService().getTokenValidationCache();
+        String previousToken = getAuthenticatedToken();
         RefreshRequest request = new RefreshRequest(this);
-        RefreshResponse response = (RefreshResponse) getAuthenticationService().makeRequest(ROUTE_REFRESH, request, RefreshResponse.class);
+        RefreshResponse response = (RefreshResponse) getAuthenticationService().makeRequest(getAuthenticationService().getEndpoints().getRefreshUrl(), request, RefreshResponse.class);
         if (!response.getClientToken().equals(getAuthenticationService().getClientToken())) {
             throw new AuthenticationException("Server requested we change our client token. Don't know how to handle this!");
         }
+        validatedTokens.invalidate(previousToken);
         if (response.getSelectedProfile() != null) {
             setUserType(response.getSelectedProfile().isLegacy() ? UserType.LEGACY : UserType.MOJANG);
         } else if (ArrayUtils.isNotEmpty(response.getAvailableProfiles())) {
@@ -143,6 +160,7 @@ public class YggdrasilUserAuthentication
         }
         this.isOnline = true;
         this.accessToken = response.getAccessToken();
+        tokenIssued();
         this.profiles = response.getAvailableProfiles();
         setSelectedProfile(response.getSelectedProfile());
         getModifiableUserProperties().clear();
@@ -153,18 +171,53 @@ public class YggdrasilUserAuthentication
     protected boolean checkTokenValidity()
             throws AuthenticationException {
         ValidateRequest request = new ValidateRequest(this);
+        TokenValidationCache validatedTokens = getAuthenticationService().getTokenValidationCache();
         try {
-            getAuthenticationService().makeRequest(ROUTE_VALIDATE, request, Response.class);
+            getAuthenticationService().makeRequest(getAuthenticationService().getEndpoints().getValidateUrl(), request, Response.class);
+            validatedTokens.markValid(getAuthenticatedToken());
             return true;
         } catch (AuthenticationException ex) {
         }
+        validatedTokens.invalidate(getAuthenticatedToken());
         return false;
     }
 
+    /**
+     * Makes logging in with a token refresh it straight away, rather than validate it first, once the token is
+     * within {@code margin} milliseconds of being {@code tokenLifetime} old. This only applies when the age of the
+     * token is known, because this instance obtained it or it was loaded from {@link #saveForStorage()} output.
+     * A lifetime of 0 turns it off.
+     */
+    public void setRefreshBeforeExpiry(long tokenLifetime, long margin) {
+        Validate.isTrue(tokenLifetime >= 0 && margin >= 0, "Expected tokenLifetime >= 0 and margin >= 0");
+        this.tokenLifetime = tokenLifetime;
+        this.refreshMargin = margin;
+    }
+
+    /**
+     * @return when the current access token was obtained, in epoch milliseconds, or -1 if unknown
+     */
+    public long getTokenObtainedAt() {
+        return this.tokenObtainedAt;
+    }
+
+    private boolean isTokenNearExpiry() {
+        return this.tokenLifetime > 0 && this.tokenObtainedAt >= 0 && System.currentTimeMillis() - this.tokenObtainedAt >= this.tokenLifetime - this.refreshMargin;
+    }
+
+    /**
+     * Call after replacing {@link #accessToken} with one the server just issued.
+     */
+    private void tokenIssued() {
+        this.tokenObtainedAt = System.currentTimeMillis();
+        getAuthenticationService().getTokenValidationCache().markValid(this.accessToken);
+    }
+
     public void logOut() {
         super.logOut();
 
         this.accessToken = null;
+        this.tokenObtainedAt = -1L;
         this.profiles = null;
         this.isOnline = false;
     }
@@ -193,12 +246,14 @@ public class YggdrasilUserAuthentication
             throw new IllegalArgumentException("Invalid profile '" + profile + "'");
         }
         RefreshRequest request = new RefreshRequest(this, profile);
-        RefreshResponse response = (RefreshResponse) getAuthenticationService().makeRequest(ROUTE_REFRESH, request, RefreshResponse.class);
+        RefreshResponse response = (RefreshResponse) getAuthenticationService().makeRequest(getAuthenticationService().getEndpoints().getRefreshUrl(), request, RefreshResponse.class);
         if (!response.getClientToken().equals(getAuthenticationService().getClientToken())) {
             throw new AuthenticationException("Server requested we change our client token. Don't know how to handle this!");
         }
+        getAuthenticationService().getTokenValidationCache().invalidate(this.accessToken);
         this.isOnline = true;
         this.accessToken = response.getAccessToken();
+        tokenIssued();
         setSelectedProfile(response.getSelectedProfile());
     }
 
@@ -206,12 +261,25 @@ public class YggdrasilUserAuthentication
         super.loadFromStorage(credentials);
 
         this.accessToken = String.valueOf(credentials.get("accessToken"));
+        this.tokenObtainedAt = -1L;
+        Object obtainedAt = credentials.get(STORAGE_KEY_TOKEN_OBTAINED_AT);
+        if (obtainedAt instanceof Number) {
+            this.tokenObtainedAt = ((Number) obtainedAt).longValue();
+        } else if (obtainedAt != null) {
+            try {
+                this.tokenObtainedAt = Long.parseLong(obtainedAt.toString());
+            } catch (NumberFormatException ignored) {
+            }
+        }
     }
 
     public Map<String, Object> saveForStorage() {
         Map<String, Object> result = super.saveForStorage();
         if (StringUtils.isNotBlank(getAuthenticatedToken())) {
             result.put("accessToken", getAuthenticatedToken());
+            if (this.tokenObtainedAt >= 0) {
+                result.put(STORAGE_KEY_TOKEN_OBTAINED_AT, Long.valueOf(this.tokenObtainedAt));
+            }
         }
         return result;
     }
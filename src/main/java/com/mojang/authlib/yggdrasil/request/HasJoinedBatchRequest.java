@@ -0,0 +1,19 @@
+package com.mojang.authlib.yggdrasil.request;
+
+public class HasJoinedBatchRequest {
+    public Check[] checks;
+
+    public HasJoinedBatchRequest(Check[] checks) {
+        this.checks = checks;
+    }
+
+    public static class Check {
+        public String username;
+        public String serverId;
+
+        public Check(String username, String serverId) {
+            this.username = username;
+            this.serverId = serverId;
+        }
+    }
+}
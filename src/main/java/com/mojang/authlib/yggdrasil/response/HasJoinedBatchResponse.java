@@ -0,0 +1,12 @@
+package com.mojang.authlib.yggdrasil.response;
+
+public class HasJoinedBatchResponse extends Response {
+    private HasJoinedMinecraftServerResponse[] results;
+
+    /**
+     * @return one entry per check, in request order; null or without an id where the player has not joined
+     */
+    public HasJoinedMinecraftServerResponse[] getResults() {
+        return this.results;
+    }
+}
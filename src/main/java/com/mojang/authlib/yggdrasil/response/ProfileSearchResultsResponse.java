@@ -1,13 +1,13 @@
 package com.mojang.authlib.yggdrasil.response;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.mojang.authlib.GameProfile;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ProfileSearchResultsResponse extends Response
 {
@@ -18,27 +18,66 @@ public class ProfileSearchResultsResponse extends Response
         return this.profiles;
     }
 
-    public static class Serializer implements JsonDeserializer<ProfileSearchResultsResponse>
+    /**
+     * Reads either the array of profiles or an error object, straight off the stream.
+     */
+    public static class Serializer extends TypeAdapter<ProfileSearchResultsResponse>
     {
-        public ProfileSearchResultsResponse deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+        private final TypeAdapter<GameProfile> profileAdapter;
+
+        public Serializer(TypeAdapter<GameProfile> profileAdapter)
+        {
+            this.profileAdapter = profileAdapter;
+        }
+
+        public ProfileSearchResultsResponse read(JsonReader in) throws IOException {
             ProfileSearchResultsResponse result = new ProfileSearchResultsResponse();
+            JsonToken token = in.peek();
 
-            if ((json instanceof JsonObject)) {
-                JsonObject object = (JsonObject)json;
-                if (object.has("error")) {
-                    result.setError(object.getAsJsonPrimitive("error").getAsString());
+            if (token == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else if ("error".equals(name)) {
+                        result.setError(in.nextString());
+                    } else if ("errorMessage".equals(name)) {
+                        result.setErrorMessage(in.nextString());
+                    } else if ("cause".equals(name)) {
+                        result.setCause(in.nextString());
+                    } else {
+                        in.skipValue();
+                    }
                 }
-                if (object.has("errorMessage")) {
-                    result.setError(object.getAsJsonPrimitive("errorMessage").getAsString());
+                in.endObject();
+            }
+            else if (token == JsonToken.BEGIN_ARRAY) {
+                List<GameProfile> profiles = new ArrayList<GameProfile>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    profiles.add(this.profileAdapter.read(in));
                 }
-                if (object.has("cause"))
-                    result.setError(object.getAsJsonPrimitive("cause").getAsString());
+                in.endArray();
+                result.profiles = profiles.toArray(new GameProfile[profiles.size()]);
             }
             else {
-                result.profiles = ((GameProfile[])context.deserialize(json, com.mojang.authlib.GameProfile.class));
+                in.skipValue();
             }
 
             return result;
         }
+
+        public void write(JsonWriter out, ProfileSearchResultsResponse value) throws IOException {
+            if (value == null || value.profiles == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (GameProfile profile : value.profiles) {
+                this.profileAdapter.write(out, profile);
+            }
+            out.endArray();
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,7 @@
 package com.mojang.util;
 
+import org.apache.commons.io.IOUtils;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,9 +21,13 @@ public class HostsHandler {
  * */
     public static Properties getProperties(String fileName) throws IOException {
         InputStream is = new FileInputStream(fileName);
-        Properties props = new Properties();
-        props.load(is);
-        return props;
+        try {
+            Properties props = new Properties();
+            props.load(is);
+            return props;
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
     }
 
 }
@@ -0,0 +1,114 @@
+package com.mojang.authlib.http;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachingHostResolverTest {
+    private static final InetAddress FIRST = address(1);
+    private static final InetAddress SECOND = address(2);
+
+    @Test
+    public void concurrentMissesShareOneLookup() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final CachingHostResolver resolver = new CachingHostResolver(new HostResolver() {
+            public InetAddress[] resolve(String host) throws UnknownHostException {
+                calls.incrementAndGet();
+                try {
+                    release.await(5L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new UnknownHostException(host);
+                }
+                return new InetAddress[]{FIRST};
+            }
+        }, Collections.<String, InetAddress[]>emptyMap(), 60000L, 5000L, 60000L);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<InetAddress[]>> results = new ArrayList<Future<InetAddress[]>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<InetAddress[]>() {
+                    public InetAddress[] call() throws UnknownHostException {
+                        return resolver.resolve("Session.Example");
+                    }
+                }));
+            }
+            // Let every caller reach the resolver before the lookup answers.
+            Thread.sleep(100L);
+            release.countDown();
+            for (Future<InetAddress[]> result : results) {
+                assertArrayEquals(new InetAddress[]{FIRST}, result.get(5L, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void refreshRetriedAfterUnexpectedError() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        CachingHostResolver resolver = new CachingHostResolver(new HostResolver() {
+            public InetAddress[] resolve(String host) {
+                switch (calls.incrementAndGet()) {
+                    case 1:
+                        return new InetAddress[]{FIRST};
+                    case 2:
+                        throw new IllegalStateException("Resolver broke");
+                    default:
+                        return new InetAddress[]{SECOND};
+                }
+            }
+        }, Collections.<String, InetAddress[]>emptyMap(), 1L, 5000L, 60000L);
+        assertArrayEquals(new InetAddress[]{FIRST}, resolver.resolve("session.example"));
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!resolver.resolve("session.example")[0].equals(SECOND)) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Expected the failed refresh to be retried, but the resolver was called " + calls.get() + " times");
+            }
+            Thread.sleep(5L);
+        }
+        assertTrue(calls.get() >= 3);
+    }
+
+    @Test
+    public void synchronousLookupErrorReachesCaller() {
+        CachingHostResolver resolver = new CachingHostResolver(new HostResolver() {
+            public InetAddress[] resolve(String host) {
+                throw new IllegalStateException("Resolver broke");
+            }
+        }, Collections.<String, InetAddress[]>emptyMap(), 60000L, 5000L, 60000L);
+        try {
+            resolver.resolve("session.example");
+            fail("Expected the resolver's error");
+        } catch (IllegalStateException expected) {
+        } catch (UnknownHostException e) {
+            fail("Expected the resolver's error, not " + e);
+        }
+        assertEquals(0, resolver.size());
+    }
+
+    private static InetAddress address(int last) {
+        try {
+            return InetAddress.getByAddress("session.example", new byte[]{10, 0, 0, (byte) last});
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
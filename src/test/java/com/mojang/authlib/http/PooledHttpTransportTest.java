@@ -0,0 +1,433 @@
+package com.mojang.authlib.http;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PooledHttpTransportTest {
+    private PooledHttpTransport transport;
+    private LocalServer server;
+
+    @Before
+    public void setUp() {
+        this.transport = new PooledHttpTransport(Proxy.NO_PROXY, 4, 30000L, 2000, 500);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.transport.close();
+        if (this.server != null) {
+            this.server.close();
+        }
+    }
+
+    @Test
+    public void readsContentLengthBody() throws IOException {
+        this.server = new LocalServer(new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 5\r\nX-Test: a\r\n\r\nhello");
+                return true;
+            }
+        });
+        HttpResponse response = this.transport.execute(new HttpRequest("GET", this.server.url("/a?b=c")));
+        assertEquals(200, response.getStatusCode());
+        assertEquals("a", response.getHeader("x-test"));
+        assertEquals("hello", body(response));
+        assertEquals("GET /a?b=c", this.server.requests().get(0));
+    }
+
+    @Test
+    public void readsChunkedBodyAndReusesConnection() throws IOException {
+        this.server = new LocalServer(new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                write(socket, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3;ext=1\r\nhel\r\n2\r\nlo\r\n0\r\nTrailer: x\r\n\r\n");
+                return true;
+            }
+        });
+        assertEquals("hello", body(this.transport.execute(new HttpRequest("GET", this.server.url("/")))));
+        assertEquals("hello", body(this.transport.execute(new HttpRequest("GET", this.server.url("/")))));
+        assertEquals(1, this.server.connections.get());
+    }
+
+    @Test
+    public void sendsChunkedRequestBody() throws IOException {
+        this.server = new LocalServer(new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: " + request.body.length() + "\r\n\r\n" + request.body);
+                return true;
+            }
+        });
+        final byte[] payload = new byte[20000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+        HttpRequest request = new HttpRequest("POST", this.server.url("/echo")).setBody(new RequestBody() {
+            public String getContentType() {
+                return "text/plain";
+            }
+
+            public long getContentLength() {
+                return -1L;
+            }
+
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(payload);
+            }
+        });
+        assertEquals(new String(payload, StandardCharsets.ISO_8859_1), body(this.transport.execute(request)));
+        assertEquals("chunked", this.server.lastHeaders.get("Transfer-Encoding"));
+    }
+
+    @Test
+    public void keepsConnectionsAliveUnlessTheServerCloses() throws IOException {
+        final AtomicInteger count = new AtomicInteger();
+        this.server = new LocalServer(new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                boolean close = count.incrementAndGet() == 3;
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n" + (close ? "Connection: close\r\n" : "") + "\r\nok");
+                return !close;
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            assertEquals("ok", body(this.transport.execute(new HttpRequest("GET", this.server.url("/")))));
+        }
+        assertEquals(2, this.server.connections.get());
+    }
+
+    @Test
+    public void retriesGetOnConnectionClosedWhileIdle() throws IOException {
+        this.server = new LocalServer(closeAfterEachResponse());
+        assertEquals("ok", body(this.transport.execute(new HttpRequest("GET", this.server.url("/")))));
+        assertEquals("ok", body(this.transport.execute(new HttpRequest("GET", this.server.url("/")))));
+        assertEquals(2, this.server.connections.get());
+        assertEquals(2, this.server.requests().size());
+    }
+
+    @Test
+    public void doesNotRetryPostOnConnectionClosedWithoutResponse() throws IOException {
+        this.server = new LocalServer(closeAfterEachResponse());
+        assertEquals("ok", body(this.transport.execute(new HttpRequest("GET", this.server.url("/")))));
+        try {
+            this.transport.execute(new HttpRequest("POST", this.server.url("/join")).setBody(new byte[]{'{', '}'}, "application/json"));
+            fail("Expected the dropped connection to fail the request");
+        } catch (IOException expected) {
+        }
+        // For all the client knows the server acted on it, so it isn't sent again on a new connection.
+        assertEquals(1, this.server.connections.get());
+        assertEquals(0, Collections.frequency(this.server.requests(), "POST /join"));
+    }
+
+    @Test
+    public void doesNotRetryPostAfterPartialResponse() throws IOException {
+        final AtomicInteger count = new AtomicInteger();
+        this.server = new LocalServer(new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                if (count.incrementAndGet() == 1) {
+                    write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                    return true;
+                }
+                write(socket, "HTTP/1.1 2");
+                socket.shutdownOutput();
+                return false;
+            }
+        });
+        body(this.transport.execute(new HttpRequest("GET", this.server.url("/"))));
+        try {
+            this.transport.execute(new HttpRequest("POST", this.server.url("/join")).setBody(new byte[]{'{', '}'}, "application/json"));
+            fail("Expected the torn response to fail the request");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, Collections.frequency(this.server.requests(), "POST /join"));
+    }
+
+    @Test
+    public void doesNotRetryAfterReadTimeout() throws IOException {
+        final AtomicInteger count = new AtomicInteger();
+        this.server = new LocalServer(new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                if (count.incrementAndGet() == 1) {
+                    write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                    return true;
+                }
+                // Never answer; the client gives up after its read timeout.
+                return true;
+            }
+        });
+        body(this.transport.execute(new HttpRequest("GET", this.server.url("/"))));
+        long start = System.currentTimeMillis();
+        try {
+            this.transport.execute(new HttpRequest("GET", this.server.url("/slow")));
+            fail("Expected a read timeout");
+        } catch (SocketTimeoutException expected) {
+        }
+        assertEquals(1, Collections.frequency(this.server.requests(), "GET /slow"));
+        long elapsed = System.currentTimeMillis() - start;
+        if (elapsed >= 1000L) {
+            fail("Waited " + elapsed + " ms, more than one read timeout");
+        }
+    }
+
+    @Test
+    public void handsHostNameToSocksProxyUnresolved() throws IOException {
+        this.server = new LocalServer(new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                return true;
+            }
+        }, true);
+        this.transport.close();
+        this.transport = new PooledHttpTransport(new Proxy(Proxy.Type.SOCKS, new InetSocketAddress(InetAddress.getLoopbackAddress(), this.server.socket.getLocalPort())), 4, 30000L, 2000, 500);
+        this.transport.setHostResolver(new HostResolver() {
+            public InetAddress[] resolve(String host) throws UnknownHostException {
+                throw new UnknownHostException(host);
+            }
+        });
+        assertEquals("ok", body(this.transport.execute(new HttpRequest("GET", new URL("http://sessionserver.invalid:8080/")))));
+        assertEquals(Collections.singletonList("sessionserver.invalid:8080"), this.server.socksTargets());
+        assertEquals("sessionserver.invalid:8080", this.server.lastHeaders.get("Host"));
+    }
+
+    private static Handler closeAfterEachResponse() {
+        return new Handler() {
+            public boolean handle(Request request, Socket socket) throws IOException {
+                write(socket, "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                // A half close, like a server dropping an idle keep-alive connection: whatever the client sends
+                // next is read and thrown away.
+                socket.shutdownOutput();
+                return false;
+            }
+        };
+    }
+
+    private static String body(HttpResponse response) throws IOException {
+        try {
+            return IOUtils.toString(response.getBody(), "ISO-8859-1");
+        } finally {
+            response.close();
+        }
+    }
+
+    private static void write(Socket socket, String data) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(data.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private interface Handler {
+        /**
+         * @return whether to keep reading requests from the connection
+         */
+        boolean handle(Request request, Socket socket) throws IOException;
+    }
+
+    private static final class Request {
+        private final String line;
+        private final Map<String, String> headers;
+        private final String body;
+
+        private Request(String line, Map<String, String> headers, String body) {
+            this.line = line;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback interface and hands each parsed request to the handler. It can also stand
+     * in for a SOCKS5 proxy, taking the connect request and then serving the connection itself.
+     */
+    private static final class LocalServer implements Closeable {
+        private final ServerSocket socket;
+        private final Handler handler;
+        private final boolean socks;
+        private final List<String> socksTargets = Collections.synchronizedList(new ArrayList<String>());
+        private final AtomicInteger connections = new AtomicInteger();
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        private final List<Socket> accepted = Collections.synchronizedList(new ArrayList<Socket>());
+        private volatile Map<String, String> lastHeaders;
+
+        private LocalServer(Handler handler) throws IOException {
+            this(handler, false);
+        }
+
+        private LocalServer(Handler handler, boolean socks) throws IOException {
+            this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.handler = handler;
+            this.socks = socks;
+            Thread acceptor = new Thread(new Runnable() {
+                public void run() {
+                    acceptLoop();
+                }
+            }, "LocalServer");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        URL url(String path) throws IOException {
+            return new URL("http", "127.0.0.1", this.socket.getLocalPort(), path);
+        }
+
+        List<String> requests() {
+            synchronized (this.requests) {
+                return new ArrayList<String>(this.requests);
+            }
+        }
+
+        List<String> socksTargets() {
+            synchronized (this.socksTargets) {
+                return new ArrayList<String>(this.socksTargets);
+            }
+        }
+
+        private void acceptLoop() {
+            while (!this.socket.isClosed()) {
+                final Socket connection;
+                try {
+                    connection = this.socket.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                this.connections.incrementAndGet();
+                this.accepted.add(connection);
+                Thread worker = new Thread(new Runnable() {
+                    public void run() {
+                        serve(connection);
+                    }
+                }, "LocalServer connection");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+
+        private void serve(Socket connection) {
+            try {
+                InputStream in = connection.getInputStream();
+                if (this.socks) {
+                    this.socksTargets.add(acceptSocksConnect(in, connection.getOutputStream()));
+                }
+                Request request;
+                while ((request = readRequest(in)) != null) {
+                    this.lastHeaders = request.headers;
+                    this.requests.add(request.line.substring(0, request.line.lastIndexOf(' ')));
+                    if (!this.handler.handle(request, connection)) {
+                        // Drain until the client gives up on the connection.
+                        while (in.read() != -1) {
+                        }
+                        break;
+                    }
+                }
+            } catch (IOException ignored) {
+            } finally {
+                closeQuietly(connection);
+            }
+        }
+
+        /**
+         * Answers the no-authentication SOCKS5 greeting and a connect request for a host name.
+         *
+         * @return the requested host and port
+         */
+        private static String acceptSocksConnect(InputStream in, OutputStream out) throws IOException {
+            byte[] greeting = readFully(in, 2);
+            readFully(in, greeting[1]);
+            out.write(new byte[]{5, 0});
+            out.flush();
+            byte[] header = readFully(in, 4);
+            if (header[1] != 1 || header[3] != 3) {
+                throw new IOException("Expected a connect request for a host name");
+            }
+            String host = new String(readFully(in, readFully(in, 1)[0] & 0xFF), StandardCharsets.US_ASCII);
+            byte[] port = readFully(in, 2);
+            out.write(new byte[]{5, 0, 0, 1, 0, 0, 0, 0, 0, 0});
+            out.flush();
+            return host + ":" + (((port[0] & 0xFF) << 8) | (port[1] & 0xFF));
+        }
+
+        private static byte[] readFully(InputStream in, int length) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            copy(in, out, length);
+            return out.toByteArray();
+        }
+
+        private static Request readRequest(InputStream in) throws IOException {
+            String line = PooledHttpTransport.readLine(in);
+            if (line == null) {
+                return null;
+            }
+            Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            String header;
+            while ((header = PooledHttpTransport.readLine(in)) != null && !header.isEmpty()) {
+                int colon = header.indexOf(':');
+                headers.put(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if ("chunked".equals(headers.get("Transfer-Encoding"))) {
+                int size;
+                while ((size = Integer.parseInt(PooledHttpTransport.readLine(in).toLowerCase(Locale.ROOT), 16)) > 0) {
+                    copy(in, body, size);
+                    PooledHttpTransport.readLine(in);
+                }
+                PooledHttpTransport.readLine(in);
+            } else if (headers.containsKey("Content-Length")) {
+                copy(in, body, Integer.parseInt(headers.get("Content-Length")));
+            }
+            return new Request(line, headers, new String(body.toByteArray(), StandardCharsets.ISO_8859_1));
+        }
+
+        private static void copy(InputStream in, OutputStream out, int length) throws IOException {
+            byte[] buffer = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(buffer, read, length - read);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            out.write(buffer);
+        }
+
+        private static void closeQuietly(Socket connection) {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        public void close() throws IOException {
+            this.socket.close();
+            synchronized (this.accepted) {
+                for (Socket connection : this.accepted) {
+                    closeQuietly(connection);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.mojang.authlib.properties;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SignatureVerifierTest {
+    private static KeyPair keys;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        if (keys == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(1024);
+            keys = generator.generateKeyPair();
+        }
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void verifiesSignedProperties() throws GeneralSecurityException {
+        SignatureVerifier verifier = new SignatureVerifier(keys.getPublic());
+        Property property = signed("textures", "value");
+        assertTrue(verifier.verify(property));
+        // Again, now from the memo.
+        assertTrue(verifier.verify(property));
+        assertTrue(property.isSignatureValid(keys.getPublic()));
+    }
+
+    @Test
+    public void rejectsTamperedAndUnsignedProperties() throws GeneralSecurityException {
+        SignatureVerifier verifier = new SignatureVerifier(keys.getPublic());
+        Property signed = signed("textures", "value");
+        assertFalse(verifier.verify(new Property("textures", "other", signed.getSignature())));
+        assertFalse(verifier.verify(new Property("textures", "value", null)));
+        assertFalse(verifier.verify(new Property("textures", "value", "bm90IGEgc2lnbmF0dXJl")));
+    }
+
+    @Test
+    public void verifiesAllInParallel() throws GeneralSecurityException {
+        SignatureVerifier verifier = new SignatureVerifier(keys.getPublic());
+        List<Property> properties = new ArrayList<Property>();
+        for (int i = 0; i < 8; i++) {
+            properties.add(signed("p" + i, "value" + i));
+        }
+        assertTrue(verifier.verifyAll(properties));
+        assertTrue(verifier.verifyAll(properties, this.executor).join().booleanValue());
+        assertTrue(verifier.verifyAll(Collections.<Property>emptyList(), this.executor).join().booleanValue());
+
+        properties.add(new Property("unsigned", "value", null));
+        assertFalse(verifier.verifyAll(properties));
+        assertFalse(verifier.verifyAll(properties, this.executor).join().booleanValue());
+    }
+
+    @Test
+    public void sharesVerifiersByKeyEncoding() throws GeneralSecurityException {
+        PublicKey copy = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(keys.getPublic().getEncoded()));
+        assertNotSame(keys.getPublic(), copy);
+        assertSame(SignatureVerifier.forKey(keys.getPublic()), SignatureVerifier.forKey(copy));
+    }
+
+    @Test
+    public void verifierForOtherKeyRejects() throws GeneralSecurityException {
+        KeyPair other = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        SignatureVerifier verifier = new SignatureVerifier(other.getPublic());
+        assertFalse(verifier.verifyAll(Arrays.asList(signed("textures", "value")), this.executor).join().booleanValue());
+    }
+
+    private static Property signed(String name, String value) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("SHA1withRSA");
+        signature.initSign(keys.getPrivate());
+        signature.update(value.getBytes(StandardCharsets.UTF_8));
+        return new Property(name, value, Base64.encodeBase64String(signature.sign()));
+    }
+}
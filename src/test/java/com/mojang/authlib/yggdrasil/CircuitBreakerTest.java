@@ -0,0 +1,149 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.exceptions.CircuitOpenException;
+import com.mojang.authlib.exceptions.InvalidCredentialsException;
+import com.mojang.authlib.exceptions.TooManyRequestsException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+    private static final long DELAY = 50L;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        this.breaker = new CircuitBreaker("test", 2, DELAY, DELAY);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws CircuitOpenException {
+        this.breaker.record(this.breaker.acquire(), unavailable());
+        this.breaker.record(this.breaker.acquire(), null);
+        this.breaker.record(this.breaker.acquire(), unavailable());
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+        this.breaker.record(this.breaker.acquire(), unavailable());
+        assertEquals(CircuitBreaker.State.OPEN, this.breaker.getState());
+        assertRejected();
+    }
+
+    @Test
+    public void otherErrorsAreAnswers() throws CircuitOpenException {
+        for (int i = 0; i < 5; i++) {
+            this.breaker.record(this.breaker.acquire(), new InvalidCredentialsException("Invalid credentials"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+    }
+
+    @Test
+    public void rateLimitingDoesNotOpen() throws CircuitOpenException {
+        for (int i = 0; i < 10; i++) {
+            this.breaker.record(this.breaker.acquire(), new TooManyRequestsException("Rate limited", 1000L));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+        // Nor does it break a run of failures.
+        long first = this.breaker.acquire();
+        long second = this.breaker.acquire();
+        this.breaker.record(first, unavailable());
+        this.breaker.record(this.breaker.acquire(), new TooManyRequestsException("Rate limited"));
+        this.breaker.record(second, unavailable());
+        assertEquals(CircuitBreaker.State.OPEN, this.breaker.getState());
+    }
+
+    @Test
+    public void rateLimitedProbeHandsOnItsTurn() throws Exception {
+        open();
+        Thread.sleep(DELAY + 10L);
+        long probe = this.breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, this.breaker.getState());
+        this.breaker.record(probe, new TooManyRequestsException("Rate limited", 20L));
+        assertEquals(CircuitBreaker.State.OPEN, this.breaker.getState());
+        Thread.sleep(30L);
+        this.breaker.record(this.breaker.acquire(), null);
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+    }
+
+    @Test
+    public void letsOneProbeThroughOnceOpenDelayHasPassed() throws Exception {
+        open();
+        assertRejected();
+        Thread.sleep(DELAY + 10L);
+        long probe = this.breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, this.breaker.getState());
+        assertRejected();
+        this.breaker.record(probe, null);
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+    }
+
+    @Test
+    public void failedProbeOpensAgain() throws Exception {
+        open();
+        Thread.sleep(DELAY + 10L);
+        this.breaker.record(this.breaker.acquire(), unavailable());
+        assertEquals(CircuitBreaker.State.OPEN, this.breaker.getState());
+        assertRejected();
+    }
+
+    @Test
+    public void lateOutcomesFromBeforeOpeningAreIgnored() throws Exception {
+        long first = this.breaker.acquire();
+        long second = this.breaker.acquire();
+        long late = this.breaker.acquire();
+        this.breaker.record(first, unavailable());
+        this.breaker.record(second, unavailable());
+        assertEquals(CircuitBreaker.State.OPEN, this.breaker.getState());
+
+        // A late failure doesn't push the reopening out.
+        this.breaker.record(late, unavailable());
+        Thread.sleep(DELAY + 10L);
+        long probe = this.breaker.acquire();
+
+        // A late success doesn't close the breaker while the probe is out, nor does a late failure reopen it.
+        this.breaker.record(late, null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, this.breaker.getState());
+        this.breaker.record(first, unavailable());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, this.breaker.getState());
+        assertRejected();
+
+        this.breaker.record(probe, null);
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+        // The probe's permit is spent once the breaker has closed.
+        this.breaker.record(probe, unavailable());
+        this.breaker.record(probe, unavailable());
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+    }
+
+    @Test
+    public void resetClosesAndRetiresPermits() throws CircuitOpenException {
+        long before = this.breaker.acquire();
+        open();
+        this.breaker.reset();
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+        this.breaker.record(before, unavailable());
+        this.breaker.record(before, unavailable());
+        assertEquals(CircuitBreaker.State.CLOSED, this.breaker.getState());
+    }
+
+    private void open() throws CircuitOpenException {
+        this.breaker.record(this.breaker.acquire(), unavailable());
+        this.breaker.record(this.breaker.acquire(), unavailable());
+        assertEquals(CircuitBreaker.State.OPEN, this.breaker.getState());
+    }
+
+    private void assertRejected() {
+        try {
+            this.breaker.acquire();
+            fail("Expected the breaker to reject the request");
+        } catch (CircuitOpenException e) {
+            assertTrue(e.getRetryAfter() >= 0L);
+        }
+    }
+
+    private static AuthenticationUnavailableException unavailable() {
+        return new AuthenticationUnavailableException("Server unavailable");
+    }
+}
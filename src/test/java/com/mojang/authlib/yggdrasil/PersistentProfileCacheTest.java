@@ -0,0 +1,115 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.Property;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PersistentProfileCacheTest {
+    private static final UUID ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final UUID OTHER_ID = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+    private File file;
+    private PersistentProfileCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = File.createTempFile("profiles", ".cache");
+        this.file.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (this.cache != null) {
+            this.cache.close();
+        }
+        this.file.delete();
+    }
+
+    @Test
+    public void returnsNewestRecord() throws IOException {
+        this.cache = open();
+        this.cache.put(profile(ID, "first"));
+        this.cache.put(profile(ID, "second"));
+        assertEquals("second", textures(this.cache.get(ID)));
+        assertNull(this.cache.get(OTHER_ID));
+
+        this.cache.close();
+        this.cache = open();
+        assertEquals("second", textures(this.cache.get(ID)));
+    }
+
+    @Test
+    public void ignoresRecordTruncatedMidPayload() throws IOException {
+        this.cache = open();
+        this.cache.put(profile(ID, "first"));
+        long first = this.file.length();
+        this.cache.put(profile(ID, "second"));
+        long second = this.file.length();
+        this.cache.close();
+        truncate(first + (second - first) / 2);
+
+        this.cache = open();
+        assertEquals("first", textures(this.cache.get(ID)));
+
+        // The next append covers the broken record with padding, which must not be mistaken for the profile.
+        this.cache.put(profile(OTHER_ID, "other"));
+        assertEquals("first", textures(this.cache.get(ID)));
+        assertEquals("other", textures(this.cache.get(OTHER_ID)));
+
+        this.cache.close();
+        this.cache = open();
+        assertEquals("first", textures(this.cache.get(ID)));
+        assertEquals("other", textures(this.cache.get(OTHER_ID)));
+    }
+
+    @Test
+    public void ignoresRecordTruncatedMidHeader() throws IOException {
+        this.cache = open();
+        this.cache.put(profile(ID, "first"));
+        long first = this.file.length();
+        this.cache.put(profile(ID, "second"));
+        this.cache.close();
+        truncate(first + 10);
+
+        this.cache = open();
+        assertEquals("first", textures(this.cache.get(ID)));
+        this.cache.put(profile(OTHER_ID, "other"));
+        this.cache.close();
+        this.cache = open();
+        assertEquals("first", textures(this.cache.get(ID)));
+        assertEquals("other", textures(this.cache.get(OTHER_ID)));
+    }
+
+    private PersistentProfileCache open() {
+        return new PersistentProfileCache(this.file, TimeUnit.HOURS.toMillis(1));
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static GameProfile profile(UUID id, String textures) {
+        GameProfile profile = new GameProfile(id, "Player");
+        profile.getProperties().put("textures", new Property("textures", textures, "signature"));
+        return profile;
+    }
+
+    private static String textures(GameProfile profile) {
+        return profile.getProperties().get("textures").iterator().next().getValue();
+    }
+}
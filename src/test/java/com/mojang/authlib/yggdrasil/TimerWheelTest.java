@@ -0,0 +1,182 @@
+package com.mojang.authlib.yggdrasil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+    private static final long TICK = 10L;
+    private static final int WHEEL_SIZE = 8;
+    private TimerWheel wheel;
+
+    @Before
+    public void setUp() {
+        this.wheel = new TimerWheel(TICK, WHEEL_SIZE, 0L);
+    }
+
+    @Test
+    public void expiresOnTheTickItIsDue() {
+        CountingTimeout timeout = new CountingTimeout();
+        this.wheel.schedule(timeout, 25L);
+        this.wheel.advance(29L);
+        assertEquals(0, timeout.expired);
+        this.wheel.advance(30L);
+        assertEquals(1, timeout.expired);
+        assertEquals(0, this.wheel.size());
+        this.wheel.advance(1000L);
+        assertEquals(1, timeout.expired);
+    }
+
+    @Test
+    public void waitsWholeTurnsForDeadlinesPastTheWheel() {
+        CountingTimeout far = new CountingTimeout();
+        CountingTimeout near = new CountingTimeout();
+        // Three turns and five ticks out, sharing a bucket with the near one.
+        this.wheel.schedule(far, (3 * WHEEL_SIZE + 5) * TICK);
+        this.wheel.schedule(near, 5 * TICK);
+        for (long now = 0L; now < (3 * WHEEL_SIZE + 5) * TICK; now += TICK) {
+            this.wheel.advance(now);
+            assertEquals(0, far.expired);
+        }
+        assertEquals(1, near.expired);
+        assertEquals(1, this.wheel.size());
+        this.wheel.advance((3 * WHEEL_SIZE + 5) * TICK);
+        assertEquals(1, far.expired);
+        assertEquals(0, this.wheel.size());
+    }
+
+    @Test
+    public void expiresDeadlinesPastTheWheelInOneLargeAdvance() {
+        CountingTimeout far = new CountingTimeout();
+        this.wheel.schedule(far, 5 * WHEEL_SIZE * TICK);
+        this.wheel.advance(10 * WHEEL_SIZE * TICK);
+        assertEquals(1, far.expired);
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotExpire() {
+        CountingTimeout timeout = new CountingTimeout();
+        this.wheel.schedule(timeout, 20L);
+        assertTrue(this.wheel.cancel(timeout));
+        assertFalse(this.wheel.cancel(timeout));
+        assertEquals(0, this.wheel.size());
+        this.wheel.advance(100L);
+        assertEquals(0, timeout.expired);
+    }
+
+    @Test
+    public void cancelDuringAdvanceStopsTimeoutDueOnTheSameTick() {
+        final CountingTimeout first = new CountingTimeout();
+        final CountingTimeout second = new CountingTimeout();
+        final boolean[] cancelled = new boolean[2];
+        first.onExpire = new Runnable() {
+            public void run() {
+                cancelled[0] = wheel.cancel(second);
+            }
+        };
+        second.onExpire = new Runnable() {
+            public void run() {
+                cancelled[1] = wheel.cancel(first);
+            }
+        };
+        this.wheel.schedule(first, 20L);
+        this.wheel.schedule(second, 20L);
+        this.wheel.advance(20L);
+        // Whichever expires first cancels the other.
+        assertEquals(1, first.expired + second.expired);
+        assertTrue(cancelled[0] || cancelled[1]);
+        assertEquals(0, this.wheel.size());
+        this.wheel.advance(1000L);
+        assertEquals(1, first.expired + second.expired);
+    }
+
+    @Test
+    public void rescheduleDuringAdvancePushesOutTimeoutDueOnTheSameTick() {
+        final CountingTimeout first = new CountingTimeout();
+        final CountingTimeout second = new CountingTimeout();
+        first.onExpire = new Runnable() {
+            public void run() {
+                wheel.schedule(second, 50L);
+            }
+        };
+        second.onExpire = new Runnable() {
+            public void run() {
+                wheel.schedule(first, 50L);
+            }
+        };
+        this.wheel.schedule(first, 20L);
+        this.wheel.schedule(second, 20L);
+        this.wheel.advance(20L);
+        assertEquals(1, first.expired + second.expired);
+        assertEquals(1, this.wheel.size());
+        this.wheel.advance(60L);
+        assertEquals(1, first.expired + second.expired);
+        this.wheel.advance(70L);
+        assertEquals(2, first.expired + second.expired);
+    }
+
+    @Test
+    public void timeoutCanRescheduleItselfOnExpiry() {
+        final CountingTimeout timeout = new CountingTimeout();
+        timeout.onExpire = new Runnable() {
+            public void run() {
+                wheel.schedule(timeout, 30L);
+            }
+        };
+        this.wheel.schedule(timeout, 30L);
+        this.wheel.advance(30L);
+        this.wheel.advance(60L);
+        this.wheel.advance(90L);
+        assertEquals(3, timeout.expired);
+        assertEquals(1, this.wheel.size());
+    }
+
+    @Test
+    public void reschedulingPendingTimeoutMovesItsDeadline() {
+        CountingTimeout later = new CountingTimeout();
+        this.wheel.schedule(later, 20L);
+        this.wheel.schedule(later, 100L);
+        assertEquals(1, this.wheel.size());
+        this.wheel.advance(90L);
+        assertEquals(0, later.expired);
+        this.wheel.advance(100L);
+        assertEquals(1, later.expired);
+
+        CountingTimeout sooner = new CountingTimeout();
+        this.wheel.schedule(sooner, 300L);
+        this.wheel.schedule(sooner, 20L);
+        this.wheel.advance(120L);
+        assertEquals(1, sooner.expired);
+        this.wheel.advance(1000L);
+        assertEquals(1, sooner.expired);
+        assertEquals(0, this.wheel.size());
+    }
+
+    @Test
+    public void roundsDelaysUpToWholeTicks() {
+        CountingTimeout zero = new CountingTimeout();
+        CountingTimeout partial = new CountingTimeout();
+        this.wheel.schedule(zero, 0L);
+        this.wheel.schedule(partial, 11L);
+        this.wheel.advance(10L);
+        assertEquals(1, zero.expired);
+        assertEquals(0, partial.expired);
+        this.wheel.advance(20L);
+        assertEquals(1, partial.expired);
+    }
+
+    private static final class CountingTimeout extends TimerWheel.Timeout {
+        private int expired;
+        private Runnable onExpire;
+
+        void expire() {
+            this.expired++;
+            if (this.onExpire != null) {
+                this.onExpire.run();
+            }
+        }
+    }
+}
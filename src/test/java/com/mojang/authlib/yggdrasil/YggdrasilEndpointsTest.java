@@ -0,0 +1,37 @@
+package com.mojang.authlib.yggdrasil;
+
+import com.mojang.authlib.HttpAuthenticationService;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class YggdrasilEndpointsTest {
+    private static final String[] NAMES = {"Notch", "a b", "a+b", "a&b=c", "%41", "\u00d1and\u00fa", "\u65e5\u672c\u8a9e", "\ud83d\ude00", "", null};
+    private static final String[] SERVER_IDS = {"-5d9b8e1a2f", "0123456789abcdef", "id with space", "a+b&c=d?#", "s\u00e9rveur", "", null};
+
+    @Test
+    public void hasJoinedUrlMatchesBuiltQuery() {
+        assertHasJoinedUrls(YggdrasilEndpoints.DEFAULT);
+    }
+
+    @Test
+    public void hasJoinedUrlMatchesBuiltQueryOnOtherServer() {
+        assertHasJoinedUrls(new YggdrasilEndpoints("http://localhost:8080/auth/", "http://localhost:8080/session/", "http://localhost:8080/profiles/"));
+    }
+
+    private static void assertHasJoinedUrls(YggdrasilEndpoints endpoints) {
+        for (String name : NAMES) {
+            for (String serverId : SERVER_IDS) {
+                Map<String, Object> arguments = new HashMap<String, Object>();
+                arguments.put("username", name);
+                arguments.put("serverId", serverId);
+                URL expected = HttpAuthenticationService.concatenateURL(endpoints.getHasJoinedUrl(), HttpAuthenticationService.buildQuery(arguments));
+                assertEquals(name + " / " + serverId, expected.toString(), endpoints.getHasJoinedUrl(name, serverId).toString());
+            }
+        }
+    }
+}